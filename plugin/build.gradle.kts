@@ -61,12 +61,14 @@ dependencies {
 
     implementation(packageSearchCatalog.jewel.bridge.ij243) //compileonly???
     implementation(packageSearchCatalog.kotlinx.serialization.core)
+    implementation(packageSearchCatalog.kotlinx.serialization.protobuf)
     implementation(packageSearchCatalog.compose.desktop.components.splitpane) {
         exclude(group = "org.jetbrains.compose.runtime")
         exclude(group = "org.jetbrains.compose.foundation")
     }
     implementation(packageSearchCatalog.ktor.client.logging)
     implementation(packageSearchCatalog.ktor.client.java)
+    implementation(packageSearchCatalog.caffeine)
     implementation(projects.plugin.gradle.base)
     implementation(projects.plugin.gradle.kmp)
     implementation(projects.plugin.maven)
@@ -82,6 +84,7 @@ dependencies {
     testImplementation(packageSearchCatalog.ide.starter.squashed)
     testImplementation(packageSearchCatalog.kotlinx.coroutines.test)
     testImplementation(packageSearchCatalog.assertk)
+    testImplementation(projects.plugin.gradle.tooling)
     testRuntimeOnly(packageSearchCatalog.junit.jupiter.engine)
 }
 
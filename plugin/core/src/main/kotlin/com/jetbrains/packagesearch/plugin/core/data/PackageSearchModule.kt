@@ -49,3 +49,9 @@ sealed interface PackageSearchModule : IconProvider, PackageSearchModuleEditor {
         val projectDir: SerializablePath,
     )
 }
+
+val PackageSearchModule.declaredPackages: List<PackageSearchDeclaredPackage>
+    get() = when (this) {
+        is PackageSearchModule.Base -> declaredDependencies
+        is PackageSearchModule.WithVariants -> variants.values.flatMap { it.declaredDependencies }
+    }
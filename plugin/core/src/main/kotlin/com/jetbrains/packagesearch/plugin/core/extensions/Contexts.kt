@@ -1,6 +1,7 @@
 package com.jetbrains.packagesearch.plugin.core.extensions
 
 import com.intellij.openapi.project.Project
+import java.nio.file.Path
 import kotlinx.coroutines.CoroutineScope
 import org.jetbrains.packagesearch.api.v3.ApiPackage
 import org.jetbrains.packagesearch.api.v3.ApiRepository
@@ -19,10 +20,27 @@ interface PackageSearchApiPackagesContext {
      */
     suspend fun getPackageInfoByIds(packageIds: Set<String>): Map<String, ApiPackage>
     suspend fun getPackageInfoByIdHashes(packageIdHashes: Set<String>): Map<String, ApiPackage>
+
+    /**
+     * Same as [getPackageInfoByIdHashes], with the declared versions of each package kept in its
+     * versions along with the latest ones.
+     *
+     * @param declaredVersionsByIdHash the names of the declared versions of each package, by package id hash.
+     */
+    suspend fun getDeclaredPackageInfoByIdHashes(
+        declaredVersionsByIdHash: Map<String, Set<String>>,
+    ): Map<String, ApiPackage> = getPackageInfoByIdHashes(declaredVersionsByIdHash.keys)
 }
 
 interface PackageSearchModuleBuilderContext :
-    ProjectContext, PackageSearchKnownRepositoriesContext, PackageSearchApiPackagesContext
+    ProjectContext, PackageSearchKnownRepositoriesContext, PackageSearchApiPackagesContext {
+
+    /**
+     * Runs [resolve], the resolution of the module in [projectDir], once its turn comes: modules
+     * the user is working on are resolved before the others. [resolve] may be run more than once.
+     */
+    suspend fun <T> withResolutionPriority(projectDir: Path, resolve: suspend () -> T): T = resolve()
+}
 
 interface ProjectContext {
     val project: Project
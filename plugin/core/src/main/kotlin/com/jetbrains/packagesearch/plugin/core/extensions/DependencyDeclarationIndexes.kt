@@ -30,4 +30,21 @@ import kotlinx.serialization.Serializable
 data class DependencyDeclarationIndexes(
     val declarationStartIndex: Int,
     val versionStartIndex: Int?
-)
\ No newline at end of file
+) {
+
+    /**
+     * Whether the declaration has been located in the build file. Declarations that have not
+     * cannot be navigated to nor edited.
+     */
+    val isLocated: Boolean
+        get() = this != UNKNOWN
+
+    companion object {
+
+        /**
+         * Placeholder for a declaration whose location in the build file is not known, or no
+         * longer valid: the declaration is read-only, and navigation and inspections skip it.
+         */
+        val UNKNOWN = DependencyDeclarationIndexes(declarationStartIndex = 0, versionStartIndex = null)
+    }
+}
\ No newline at end of file
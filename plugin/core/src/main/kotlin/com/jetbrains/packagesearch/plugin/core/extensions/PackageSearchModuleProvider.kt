@@ -11,4 +11,11 @@ interface PackageSearchModuleProvider {
 
     fun getSyncStateFlow(project: Project): Flow<Boolean>
 
+    /**
+     * Whether a file named [fileName] may declare the dependencies of the modules of this
+     * provider: build scripts, but also settings scripts or version catalogs. Opening or
+     * inspecting such a file activates Package Search.
+     */
+    fun isBuildFile(fileName: String): Boolean = false
+
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.jetbrains.packagesearch.plugin.core.utils
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.SystemInfo
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+
+/**
+ * Dispatches VFS changes to the modules watching their build files.
+ *
+ * A single VFS listener serves the whole project: watched paths are normalized once, when
+ * subscribing, into a hash index, so each changed path is routed to its subscribers with a
+ * single lookup instead of comparing it against every file known by every module.
+ */
+@Service(Service.Level.PROJECT)
+class BuildFileChangesRouter(coroutineScope: CoroutineScope) {
+
+    private class Subscriber(val notify: () -> Unit)
+
+    private val subscribersByPath = ConcurrentHashMap<String, MutableSet<Subscriber>>()
+
+    init {
+        filesChangedEventFlow
+            .onEach { events -> dispatch(events) }
+            .launchIn(coroutineScope)
+    }
+
+    /**
+     * Emits once per VFS batch that changes, creates, deletes or moves any of [paths].
+     */
+    fun changesFlow(paths: Collection<Path>): Flow<Unit> = callbackFlow {
+        val keys = paths.flatMapTo(mutableSetOf()) { it.indexKeys() }
+        val subscriber = Subscriber { trySend(Unit) }
+        keys.forEach { subscribersByPath.computeIfAbsent(it) { ConcurrentHashMap.newKeySet() }.add(subscriber) }
+        awaitClose {
+            keys.forEach { key ->
+                subscribersByPath.computeIfPresent(key) { _, subscribers ->
+                    subscribers.remove(subscriber)
+                    subscribers.takeIf { it.isNotEmpty() }
+                }
+            }
+        }
+    }.buffer(Channel.CONFLATED)
+
+    private fun dispatch(events: List<VFileEvent>) {
+        if (subscribersByPath.isEmpty()) return
+        events.asSequence()
+            .flatMap { it.affectedPaths() }
+            .mapNotNull { subscribersByPath[it.toIndexKey()] }
+            .flatten()
+            .toSet()
+            .forEach { it.notify() }
+    }
+
+    private fun VFileEvent.affectedPaths(): Sequence<String> = when {
+        this is VFileMoveEvent -> sequenceOf(oldPath, newPath)
+        this is VFilePropertyChangeEvent && isRename -> sequenceOf(oldPath, newPath)
+        else -> sequenceOf(path)
+    }
+
+    /**
+     * The normalized absolute path and, when it goes through a symbolic link, the real path
+     * as well, since VFS events may report either of them.
+     */
+    private fun Path.indexKeys(): Set<String> {
+        val normalized = toAbsolutePath().normalize()
+        val real = runCatching { normalized.toRealPath() }.getOrNull()
+        return setOfNotNull(normalized.toString().toIndexKey(), real?.toString()?.toIndexKey())
+    }
+
+    private fun String.toIndexKey(): String {
+        val systemIndependent = FileUtil.toSystemIndependentName(this)
+        return if (SystemInfo.isFileSystemCaseSensitive) systemIndependent else systemIndependent.lowercase()
+    }
+}
+
+/**
+ * @see BuildFileChangesRouter.changesFlow
+ */
+fun Project.buildFileChangesFlow(paths: Collection<Path>): Flow<Unit> =
+    service<BuildFileChangesRouter>().changesFlow(paths)
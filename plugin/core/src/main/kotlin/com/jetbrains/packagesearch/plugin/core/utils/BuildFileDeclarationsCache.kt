@@ -0,0 +1,101 @@
+package com.jetbrains.packagesearch.plugin.core.utils
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.LocalFileSystem
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+
+/**
+ * Declarations parsed from build files, kept until one of the files they were parsed from is
+ * modified, either on disk or in an editor, or until the build is synced again.
+ *
+ * This is the local stage of module building: rebuilding a module because the remote info of
+ * its packages changed reuses the declarations parsed before, without reading PSI again.
+ */
+@Service(Service.Level.PROJECT)
+class BuildFileDeclarationsCache(coroutineScope: CoroutineScope) {
+
+    private data class Key(val parserName: String, val files: List<Path>)
+
+    private class Entry(val modificationStamps: List<Long>, val declarations: Any?)
+
+    private val entries = ConcurrentHashMap<Key, Entry>()
+
+    init {
+        lowMemoryFlow
+            .onEach { clear() }
+            .launchIn(coroutineScope)
+    }
+
+    /**
+     * Returns the declarations [parse] returned for [files] the last time, as long as none of
+     * them changed since; otherwise runs [parse] again. [parserName] tells apart the
+     * declarations parsed from the same files by different parsers.
+     */
+    @Suppress("UNCHECKED_CAST")
+    suspend fun <T> getOrParse(parserName: String, files: List<Path>, parse: suspend () -> T): T {
+        val key = Key(parserName, files)
+        // stamps are read before parsing, so that changes made while parsing invalidate the result
+        val modificationStamps = files.map { modificationStampOf(it) }
+        entries[key]
+            ?.takeIf { it.modificationStamps == modificationStamps }
+            ?.let {
+                PackageSearchMetrics.increment("declarations.cache.hits")
+                return it.declarations as T
+            }
+        PackageSearchMetrics.increment("declarations.cache.misses")
+        return PackageSearchMetrics.measure("declarations.parse.$parserName") { parse() }
+            .also { entries[key] = Entry(modificationStamps, it) }
+    }
+
+    /**
+     * Drops all the cached declarations, for instance once a sync may have changed what the
+     * build files resolve to.
+     */
+    fun clear() {
+        entries.clear()
+    }
+
+    /**
+     * Whether [getOrParse] would return the cached declarations for [files] without parsing them.
+     */
+    fun isUpToDate(parserName: String, files: List<Path>): Boolean =
+        entries[Key(parserName, files)]?.modificationStamps == files.map { modificationStampOf(it) }
+
+    /**
+     * The stamp of the document of [file] if it is loaded, else the stamp of the file. A document
+     * starts with the stamp of its file and the file takes the stamp of the document when saved,
+     * so loading or collecting an unmodified document, as parsing does, does not change it.
+     */
+    private fun modificationStampOf(file: Path): Long {
+        val virtualFile = LocalFileSystem.getInstance().findFileByNioFile(file)
+            ?: return -1
+        return FileDocumentManager.getInstance().getCachedDocument(virtualFile)?.modificationStamp
+            ?: virtualFile.modificationStamp
+    }
+}
+
+/**
+ * @see BuildFileDeclarationsCache.getOrParse
+ */
+suspend fun <T> Project.cachedDeclarations(parserName: String, files: List<Path>, parse: suspend () -> T): T =
+    service<BuildFileDeclarationsCache>().getOrParse(parserName, files, parse)
+
+/**
+ * @see BuildFileDeclarationsCache.isUpToDate
+ */
+fun Project.hasCachedDeclarations(parserName: String, files: List<Path>): Boolean =
+    service<BuildFileDeclarationsCache>().isUpToDate(parserName, files)
+
+/**
+ * @see BuildFileDeclarationsCache.clear
+ */
+fun Project.clearCachedDeclarations() {
+    service<BuildFileDeclarationsCache>().clear()
+}
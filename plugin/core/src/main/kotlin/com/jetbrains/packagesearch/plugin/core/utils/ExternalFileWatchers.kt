@@ -0,0 +1,40 @@
+@file:OptIn(FlowPreview::class)
+
+package com.jetbrains.packagesearch.plugin.core.utils
+
+import com.intellij.openapi.components.Service
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.time.Duration.Companion.milliseconds
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.shareIn
+
+/**
+ * Application-wide watchers for files living outside of projects, like the global
+ * `gradle.properties` or the Maven `settings.xml`, which every module of every project
+ * would otherwise watch on its own.
+ *
+ * Each file gets a single watch request and a single VFS listener, shared by all collectors:
+ * they are registered with the first collector and removed with the last one. Bursts of
+ * changes, like the several events of a single save, are coalesced into one emission.
+ */
+@Service(Service.Level.APP)
+class ExternalFileWatchers(private val coroutineScope: CoroutineScope) {
+
+    private val watchers = ConcurrentHashMap<Path, Flow<Unit>>()
+
+    fun changesFlow(path: Path): Flow<Unit> =
+        watchers.computeIfAbsent(path.toAbsolutePath().normalize()) { normalizedPath ->
+            externalFileChangesFlow(normalizedPath)
+                .debounce(COALESCING_WINDOW)
+                .shareIn(coroutineScope, SharingStarted.WhileSubscribed())
+        }
+
+    companion object {
+        private val COALESCING_WINDOW = 100.milliseconds
+    }
+}
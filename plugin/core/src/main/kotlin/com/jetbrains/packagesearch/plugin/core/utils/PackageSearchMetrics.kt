@@ -0,0 +1,85 @@
+package com.jetbrains.packagesearch.plugin.core.utils
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.nanoseconds
+import kotlin.time.DurationUnit
+import kotlin.time.TimeSource
+import kotlinx.serialization.Serializable
+
+/**
+ * Timings of the stages of the Package Search pipeline, from the module providers to the UI,
+ * and counters of the work they do, for diagnostics. Stage and counter names are dotted,
+ * starting with the part of the pipeline they belong to, like `gradle.transform`.
+ *
+ * Recording is cheap enough to stay always on: a stage only keeps its count, total and
+ * maximum duration.
+ */
+object PackageSearchMetrics {
+
+    @Serializable
+    data class Stage(
+        val count: Long,
+        val totalMillis: Double,
+        val maxMillis: Double,
+    ) {
+        val averageMillis: Double
+            get() = if (count == 0L) 0.0 else totalMillis / count
+    }
+
+    @Serializable
+    data class Snapshot(
+        val stages: Map<String, Stage>,
+        val counters: Map<String, Long>,
+    )
+
+    private class StageRecorder {
+        val count = AtomicLong()
+        val totalNanos = AtomicLong()
+        val maxNanos = AtomicLong()
+    }
+
+    private val stages = ConcurrentHashMap<String, StageRecorder>()
+    private val counters = ConcurrentHashMap<String, AtomicLong>()
+
+    fun record(stage: String, duration: Duration) {
+        val nanos = duration.inWholeNanoseconds
+        val recorder = stages.computeIfAbsent(stage) { StageRecorder() }
+        recorder.count.incrementAndGet()
+        recorder.totalNanos.addAndGet(nanos)
+        recorder.maxNanos.accumulateAndGet(nanos, ::maxOf)
+    }
+
+    /**
+     * Runs [action] and records how long it took as [stage], whether it succeeded or not.
+     */
+    inline fun <T> measure(stage: String, action: () -> T): T {
+        val start = TimeSource.Monotonic.markNow()
+        try {
+            return action()
+        } finally {
+            record(stage, start.elapsedNow())
+        }
+    }
+
+    fun increment(counter: String, by: Long = 1) {
+        counters.computeIfAbsent(counter) { AtomicLong() }.addAndGet(by)
+    }
+
+    fun snapshot() = Snapshot(
+        stages = stages.entries.associateTo(sortedMapOf()) { (name, recorder) ->
+            name to Stage(
+                count = recorder.count.get(),
+                totalMillis = recorder.totalNanos.get().nanoseconds.toDouble(DurationUnit.MILLISECONDS),
+                maxMillis = recorder.maxNanos.get().nanoseconds.toDouble(DurationUnit.MILLISECONDS),
+            )
+        },
+        counters = counters.entries.associateTo(sortedMapOf()) { (name, value) -> name to value.get() },
+    )
+
+    fun reset() {
+        stages.clear()
+        counters.clear()
+    }
+}
@@ -0,0 +1,151 @@
+@file:OptIn(ExperimentalCoroutinesApi::class)
+
+package com.jetbrains.packagesearch.plugin.core.utils
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationListener
+import com.intellij.openapi.application.readAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.registry.Registry
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.nanoseconds
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.yield
+
+/**
+ * The dispatcher module providers run on. Its parallelism is read once from the
+ * `packagesearch.plugin.max.parallel.read.actions` registry key, so that after a sync
+ * the read actions of hundreds of modules queue up here instead of all competing
+ * with the write actions of the editor.
+ */
+val PackageSearchDispatcher: CoroutineDispatcher by lazy {
+    val parallelism = Registry.intValue(MAX_PARALLEL_READ_ACTIONS_KEY, DEFAULT_MAX_PARALLEL_READ_ACTIONS)
+    Dispatchers.Default.limitedParallelism(parallelism.coerceAtLeast(1))
+}
+
+private const val MAX_PARALLEL_READ_ACTIONS_KEY = "packagesearch.plugin.max.parallel.read.actions"
+private const val DEFAULT_MAX_PARALLEL_READ_ACTIONS = 2
+
+/**
+ * Runs [action] in a read action on [PackageSearchDispatcher], after yielding to the
+ * other coroutines waiting for it.
+ *
+ * The read action is the non-blocking one of the platform: it is cancelled and restarted
+ * when a write action is requested. [action] should still stay within the read action
+ * budget, since the write action waits for it to check for cancellation; read actions
+ * over budget are counted in [PackageSearchReadActionMonitor.stats] and logged at debug
+ * level with [contextName].
+ *
+ * @see PackageSearchReadActionMonitor
+ */
+suspend fun <T> packageSearchReadAction(contextName: String, action: () -> T): T =
+    withContext(PackageSearchDispatcher) {
+        yield()
+        val monitor = IntelliJApplication.service<PackageSearchReadActionMonitor>()
+        readAction { monitor.measure(contextName, action) }
+    }
+
+/**
+ * Measures the read actions run with [packageSearchReadAction] and how long write actions
+ * have been waiting for them.
+ *
+ * A write action is considered blocked by the plugin when it is requested while one of
+ * its read actions is running, until it actually starts.
+ */
+@Service(Service.Level.APP)
+class PackageSearchReadActionMonitor : Disposable {
+
+    data class Stats(
+        val readActions: Long,
+        val readActionsOverBudget: Long,
+        val totalReadActionTime: Duration,
+        val maxReadActionTime: Duration,
+        val blockedWriteActions: Long,
+        val totalWriteActionBlockingTime: Duration,
+        val maxWriteActionBlockingTime: Duration,
+    )
+
+    private val runningReadActions = AtomicInteger()
+    private val readActions = AtomicLong()
+    private val readActionsOverBudget = AtomicLong()
+    private val totalReadActionNanos = AtomicLong()
+    private val maxReadActionNanos = AtomicLong()
+    private val blockedWriteActions = AtomicLong()
+    private val totalWriteActionBlockingNanos = AtomicLong()
+    private val maxWriteActionBlockingNanos = AtomicLong()
+
+    // write actions are requested and started on the EDT only
+    private var blockedWriteActionRequestedAt = 0L
+
+    init {
+        IntelliJApplication.addApplicationListener(
+            object : ApplicationListener {
+                override fun beforeWriteActionStart(action: Any) {
+                    blockedWriteActionRequestedAt = if (runningReadActions.get() > 0) System.nanoTime() else 0L
+                }
+
+                override fun writeActionStarted(action: Any) {
+                    if (blockedWriteActionRequestedAt == 0L) return
+                    val blockedNanos = System.nanoTime() - blockedWriteActionRequestedAt
+                    blockedWriteActionRequestedAt = 0L
+                    blockedWriteActions.incrementAndGet()
+                    totalWriteActionBlockingNanos.addAndGet(blockedNanos)
+                    maxWriteActionBlockingNanos.accumulateAndGet(blockedNanos, ::maxOf)
+                }
+            },
+            this
+        )
+    }
+
+    val readActionBudget: Duration
+        get() = Registry.intValue(READ_ACTION_BUDGET_KEY, DEFAULT_READ_ACTION_BUDGET_MS).milliseconds
+
+    internal fun <T> measure(contextName: String, action: () -> T): T {
+        runningReadActions.incrementAndGet()
+        val start = System.nanoTime()
+        try {
+            return action()
+        } finally {
+            val elapsedNanos = System.nanoTime() - start
+            runningReadActions.decrementAndGet()
+            readActions.incrementAndGet()
+            totalReadActionNanos.addAndGet(elapsedNanos)
+            maxReadActionNanos.accumulateAndGet(elapsedNanos, ::maxOf)
+            val budget = readActionBudget
+            if (elapsedNanos.nanoseconds > budget) {
+                readActionsOverBudget.incrementAndGet()
+                // parsing build files often goes over budget, a sync of a large build would flood the log
+                if (logger.isDebugEnabled) {
+                    logger.debug("$contextName: read action took ${elapsedNanos.nanoseconds}, over the budget of $budget")
+                }
+            }
+        }
+    }
+
+    fun stats() = Stats(
+        readActions = readActions.get(),
+        readActionsOverBudget = readActionsOverBudget.get(),
+        totalReadActionTime = totalReadActionNanos.get().nanoseconds,
+        maxReadActionTime = maxReadActionNanos.get().nanoseconds,
+        blockedWriteActions = blockedWriteActions.get(),
+        totalWriteActionBlockingTime = totalWriteActionBlockingNanos.get().nanoseconds,
+        maxWriteActionBlockingTime = maxWriteActionBlockingNanos.get().nanoseconds,
+    )
+
+    override fun dispose() {
+    }
+
+    companion object {
+        private const val READ_ACTION_BUDGET_KEY = "packagesearch.plugin.read.action.budget.ms"
+        private const val DEFAULT_READ_ACTION_BUDGET_MS = 50
+        private val logger = Logger.getInstance(PackageSearchReadActionMonitor::class.java)
+    }
+}
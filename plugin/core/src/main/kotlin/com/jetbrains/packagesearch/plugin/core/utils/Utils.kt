@@ -21,6 +21,7 @@ import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.getProjectDataPath
 import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.LowMemoryWatcher
 import com.intellij.openapi.util.registry.Registry
 import com.intellij.openapi.util.registry.RegistryManager
 import com.intellij.openapi.util.registry.RegistryValue
@@ -124,6 +125,16 @@ val filesChangedEventFlow: Flow<List<VFileEvent>>
         awaitClose { Disposer.dispose(disposable) }
     }
 
+/**
+ * Emits every time the IDE reports that it is low on memory after a GC.
+ */
+val lowMemoryFlow: Flow<Unit>
+    get() = callbackFlow {
+        val disposable = Disposer.newDisposable()
+        LowMemoryWatcher.register({ trySend(Unit) }, LowMemoryWatcher.LowMemoryWatcherType.ONLY_AFTER_GC, disposable)
+        awaitClose { Disposer.dispose(disposable) }
+    }
+
 fun VirtualFileListener(action: (VirtualFileEvent) -> Unit) =
     object : VirtualFileListener {
         override fun contentsChanged(event: VirtualFileEvent) {
@@ -134,7 +145,17 @@ fun VirtualFileListener(action: (VirtualFileEvent) -> Unit) =
 fun LocalFileSystem.addVirtualFileListener(action: (VirtualFileEvent) -> Unit) =
     VirtualFileListener(action).also { addVirtualFileListener(it) }
 
-fun watchExternalFileChanges(path: Path): Flow<Unit> {
+/**
+ * Emits when the file at [path], which may be outside of any project, changes.
+ *
+ * The file is watched once for the whole application, no matter how many collectors there are.
+ *
+ * @see ExternalFileWatchers
+ */
+fun watchExternalFileChanges(path: Path): Flow<Unit> =
+    IntelliJApplication.service<ExternalFileWatchers>().changesFlow(path)
+
+internal fun externalFileChangesFlow(path: Path): Flow<Unit> {
     val fileSystem = LocalFileSystem.getInstance()
     path.parent.toFile().mkdirs()
     return callbackFlow {
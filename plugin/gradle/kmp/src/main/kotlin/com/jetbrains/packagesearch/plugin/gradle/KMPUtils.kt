@@ -2,7 +2,6 @@
 
 package com.jetbrains.packagesearch.plugin.gradle
 
-import com.intellij.openapi.application.readAction
 import com.intellij.openapi.module.Module
 import com.intellij.packageSearch.mppDependencyUpdater.MppDependency
 import com.intellij.packageSearch.mppDependencyUpdater.MppDependencyModifier
@@ -12,13 +11,17 @@ import com.jetbrains.packagesearch.plugin.core.data.IconProvider
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredPackage
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModuleVariant
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
+import com.jetbrains.packagesearch.plugin.core.utils.cachedDeclarations
 import com.jetbrains.packagesearch.plugin.core.utils.icon
+import com.jetbrains.packagesearch.plugin.core.utils.packageSearchReadAction
 import com.jetbrains.packagesearch.plugin.core.utils.parseAttributesFromRawStrings
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel
 import com.jetbrains.packagesearch.plugin.gradle.utils.getDeclaredDependencies
+import com.jetbrains.packagesearch.plugin.gradle.utils.knownFiles
 import com.jetbrains.packagesearch.plugin.gradle.utils.toGradleDependencyModel
-import java.nio.file.Path
 import kotlin.contracts.ExperimentalContracts
 import kotlin.contracts.contract
+import kotlin.io.path.Path
 import kotlinx.coroutines.async
 import kotlinx.coroutines.coroutineScope
 import kotlinx.serialization.SerialName
@@ -131,13 +134,13 @@ fun PackageSearchKotlinMultiplatformDeclaredDependency.Maven.toMPPDependency() =
 suspend fun Module.getKMPVariants(
     context: PackageSearchModuleBuilderContext,
     compilationModel: Map<String, Set<MppCompilationInfoModel.Compilation>>,
-    buildFilePath: Path?,
+    model: PackageSearchGradleJavaModel,
     availableScopes: List<String>,
 ): List<PackageSearchKotlinMultiplatformVariant> = coroutineScope {
-    if (buildFilePath == null) return@coroutineScope emptyList()
+    if (model.buildFilePath == null) return@coroutineScope emptyList()
 
     val dependenciesBlockVariant = async {
-        val declaredDependencies = getDeclaredDependencies(context)
+        val declaredDependencies = getDeclaredDependencies(context, model)
         PackageSearchKotlinMultiplatformVariant.DependenciesBlock(
             declaredDependencies = declaredDependencies.asKmpVariantDependencies(),
             compatiblePackageTypes = buildPackageTypes {
@@ -158,16 +161,19 @@ suspend fun Module.getKMPVariants(
         )
     }
 
-    val rawDeclaredSourceSetDependencies = getDependenciesBySourceSet()
-
-    val packageIds = rawDeclaredSourceSetDependencies
-        .values
-        .asSequence()
-        .flatten()
-        .distinct()
-        .map { it.packageId }
+    val rawDeclaredSourceSetDependencies = context.withResolutionPriority(Path(model.projectDir)) {
+        project.cachedDeclarations("kmp-source-set-dependencies", model.knownFiles) {
+            getDependenciesBySourceSet()
+        }
+    }
 
-    val dependencyInfo = context.getPackageInfoByIdHashes(packageIds.map { ApiPackage.hashPackageId(it) }.toSet())
+    val dependencyInfo = context.getDeclaredPackageInfoByIdHashes(
+        rawDeclaredSourceSetDependencies
+            .values
+            .flatten()
+            .groupBy({ ApiPackage.hashPackageId(it.packageId) }, { it.version })
+            .mapValues { (_, versions) -> versions.filterNotNull().toSet() }
+    )
 
     val declaredSourceSetDependencies =
         rawDeclaredSourceSetDependencies
@@ -225,5 +231,5 @@ suspend fun Module.getKMPVariants(
 
 private suspend fun Module.getDependenciesBySourceSet(): Map<String, List<GradleDependencyModel>> = MppDependencyModifier.dependenciesBySourceSet(this)
     ?.filterNotNullValues()
-    ?.mapValues { readAction { it.value.artifacts().map { it.toGradleDependencyModel() } }.distinct() }
+    ?.mapValues { packageSearchReadAction("${Module::class.simpleName}#getDependenciesBySourceSet") { it.value.artifacts().map { it.toGradleDependencyModel() } }.distinct() }
     ?: emptyMap()
@@ -14,40 +14,39 @@ import kotlinx.coroutines.flow.FlowCollector
 
 class KotlinMultiplatformModuleProvider : AbstractGradleModuleProvider() {
 
+    override fun isApplicable(model: PackageSearchGradleJavaModel) =
+        PackageSearch.isKMPEnabled && model.isKotlinMultiplatformApplied && !model.isAmperApplied
+
     override suspend fun FlowCollector<PackageSearchModule?>.transform(
         context: PackageSearchModuleBuilderContext,
         module: Module,
         model: PackageSearchGradleJavaModel,
     ) {
-        if (PackageSearch.isKMPEnabled && model.isKotlinMultiplatformApplied && !model.isAmperApplied)
-            MppCompilationInfoProvider.sourceSetsMap(context.project, Path(model.projectDir))
-                .collect { compilationModel ->
-                    val variants = module.getKMPVariants(
-                        context = context,
-                        compilationModel = compilationModel,
-                        buildFilePath = Path(model.buildFilePath),
-                        availableScopes = model.configurations
-                            .filter { it.isCanBeDeclared }
-                            .map { it.name }
-                    ).associateBy { it.name }
-                    val pkgsModule = PackageSearchKotlinMultiplatformModule(
-                        name = model.projectName,
-                        identity = PackageSearchModule.Identity(
-                            group = "gradle",
-                            path = model.projectIdentityPath,
-                            projectDir = Path(model.projectDir),
-                        ),
-                        buildFilePath = Path(model.buildFilePath),
-                        declaredRepositories = model.declaredRepositories.toGradle(context),
-                        variants = variants,
-                        packageSearchModel = model,
-                        availableKnownRepositories = context.knownRepositories,
-                        nativeModule = module
-                    )
-                    emit(pkgsModule)
-                }
-
+        MppCompilationInfoProvider.sourceSetsMap(context.project, Path(model.projectDir))
+            .collect { compilationModel ->
+                val variants = module.getKMPVariants(
+                    context = context,
+                    compilationModel = compilationModel,
+                    model = model,
+                    availableScopes = model.configurations
+                        .filter { it.isCanBeDeclared }
+                        .map { it.name }
+                ).associateBy { it.name }
+                val pkgsModule = PackageSearchKotlinMultiplatformModule(
+                    name = model.projectName,
+                    identity = PackageSearchModule.Identity(
+                        group = "gradle",
+                        path = model.projectIdentityPath,
+                        projectDir = Path(model.projectDir),
+                    ),
+                    buildFilePath = Path(model.buildFilePath),
+                    declaredRepositories = model.declaredRepositories.toGradle(context),
+                    variants = variants,
+                    packageSearchModel = model,
+                    availableKnownRepositories = context.knownRepositories,
+                    nativeModule = module
+                )
+                emit(pkgsModule)
+            }
     }
-
 }
-
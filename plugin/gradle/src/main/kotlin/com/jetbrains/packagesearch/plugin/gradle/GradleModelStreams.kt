@@ -0,0 +1,67 @@
+@file:Suppress("UnstableApiUsage")
+
+package com.jetbrains.packagesearch.plugin.gradle
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.Service.Level
+import com.intellij.openapi.externalSystem.util.ExternalSystemApiUtil
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Disposer
+import com.jetbrains.packagesearch.plugin.core.utils.isProjectImportingFlow
+import com.jetbrains.packagesearch.plugin.core.utils.smartModeFlow
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel
+import com.jetbrains.packagesearch.plugin.gradle.utils.GRADLE_MODEL_DATA_NODE_KEY
+import com.jetbrains.packagesearch.plugin.gradle.utils.getModuleChangesFlow
+import com.jetbrains.packagesearch.plugin.gradle.utils.initializeProjectFlow
+import com.jetbrains.packagesearch.plugin.gradle.utils.isGradle
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.merge
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.flow.shareIn
+import org.jetbrains.plugins.gradle.util.GradleUtil.findGradleModuleData
+import com.intellij.openapi.module.Module as NativeModule
+
+/**
+ * One stream of [PackageSearchGradleJavaModel] per native module, shared by every
+ * [AbstractGradleModuleProvider]: the Gradle module data is looked up and the build files are
+ * watched once per module, no matter how many providers there are.
+ *
+ * A stream emits the model again each time the build files of the module change. It is started
+ * with its first subscriber and stopped with its last one, then dropped when the module is disposed.
+ */
+@Service(Level.PROJECT)
+class GradleModelStreams(
+    private val project: Project,
+    private val coroutineScope: CoroutineScope,
+) {
+
+    private val streams = ConcurrentHashMap<NativeModule, Flow<PackageSearchGradleJavaModel>>()
+
+    fun modelFlow(nativeModule: NativeModule): Flow<PackageSearchGradleJavaModel> =
+        streams.computeIfAbsent(nativeModule) {
+            if (!nativeModule.isDisposed) Disposer.register(nativeModule) { streams.remove(nativeModule) }
+            createModelFlow(nativeModule)
+                .shareIn(coroutineScope, SharingStarted.WhileSubscribed(), replay = 1)
+        }
+
+    private fun createModelFlow(nativeModule: NativeModule) =
+        merge(project.smartModeFlow, project.isProjectImportingFlow, project.initializeProjectFlow)
+            .filter { nativeModule.isGradle }
+            .mapNotNull {
+                findGradleModuleData(nativeModule)
+                    ?.let { ExternalSystemApiUtil.find(it, GRADLE_MODEL_DATA_NODE_KEY) }
+                    ?.data
+            }
+            .flatMapLatest { model ->
+                getModuleChangesFlow(project, model)
+                    .map { model }
+                    .onStart { emit(model) }
+            }
+}
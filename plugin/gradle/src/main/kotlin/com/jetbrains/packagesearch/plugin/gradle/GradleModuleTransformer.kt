@@ -7,32 +7,21 @@ import com.intellij.openapi.components.Service.Level
 import com.intellij.openapi.components.service
 import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskId
 import com.intellij.openapi.externalSystem.model.task.ExternalSystemTaskNotificationListenerAdapter
-import com.intellij.openapi.externalSystem.util.ExternalSystemApiUtil
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.Project
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleProvider
-import com.jetbrains.packagesearch.plugin.core.utils.isProjectImportingFlow
-import com.jetbrains.packagesearch.plugin.core.utils.smartModeFlow
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.clearCachedDeclarations
 import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel
-import com.jetbrains.packagesearch.plugin.gradle.utils.GRADLE_MODEL_DATA_NODE_KEY
 import com.jetbrains.packagesearch.plugin.gradle.utils.awaitExternalSystemInitialization
-import com.jetbrains.packagesearch.plugin.gradle.utils.getModuleChangesFlow
-import com.jetbrains.packagesearch.plugin.gradle.utils.initializeProjectFlow
-import com.jetbrains.packagesearch.plugin.gradle.utils.isGradle
+import kotlin.time.TimeSource
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.FlowCollector
 import kotlinx.coroutines.flow.MutableStateFlow
-import kotlinx.coroutines.flow.filter
-import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flow
-import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.mapNotNull
-import kotlinx.coroutines.flow.merge
-import kotlinx.coroutines.flow.onStart
 import kotlinx.coroutines.flow.transformLatest
-import org.jetbrains.plugins.gradle.util.GradleUtil.findGradleModuleData
 import org.jetbrains.plugins.gradle.util.isResolveTask
 import com.intellij.openapi.module.Module as NativeModule
 
@@ -51,28 +40,46 @@ abstract class AbstractGradleModuleProvider : PackageSearchModuleProvider {
         context: PackageSearchModuleBuilderContext,
         nativeModule: NativeModule,
     ): Flow<PackageSearchModule?> =
-        merge(context.project.smartModeFlow, context.project.isProjectImportingFlow, context.project.initializeProjectFlow)
-            .filter { nativeModule.isGradle }
-            .mapNotNull {
-                findGradleModuleData(nativeModule)
-                    ?.let { ExternalSystemApiUtil.find(it, GRADLE_MODEL_DATA_NODE_KEY) }
-                    ?.data
-            }
-            .flatMapLatest { model ->
-                getModuleChangesFlow(model)
-                    .map { model }
-                    .onStart { emit(model) }
-            }
+        context.project.service<GradleModelStreams>()
+            .modelFlow(nativeModule)
             .transformLatest { model ->
-                transform(context, nativeModule, model)
+                when {
+                    isApplicable(model) -> measuredCollector(this).transform(context, nativeModule, model)
+                    else -> emit(null)
+                }
             }
 
+    /**
+     * Records in [PackageSearchMetrics] the time spent building each module emitted to [collector].
+     */
+    private fun measuredCollector(collector: FlowCollector<PackageSearchModule?>): FlowCollector<PackageSearchModule?> {
+        var start = TimeSource.Monotonic.markNow()
+        return FlowCollector { module ->
+            PackageSearchMetrics.record("gradle.transform", start.elapsedNow())
+            collector.emit(module)
+            start = TimeSource.Monotonic.markNow()
+        }
+    }
+
+    /**
+     * Whether this provider builds a module out of [model]. The model stream is shared by all
+     * Gradle providers, so that only the applicable ones do any work on it.
+     */
+    open fun isApplicable(model: PackageSearchGradleJavaModel): Boolean = true
+
     abstract suspend fun FlowCollector<PackageSearchModule?>.transform(
         context: PackageSearchModuleBuilderContext,
         module: Module,
         model: PackageSearchGradleJavaModel,
     )
 
+    /**
+     * Any Groovy or Kotlin script, as build files may have custom names and scripts may be
+     * applied from others, and version catalogs.
+     */
+    override fun isBuildFile(fileName: String) =
+        fileName.endsWith(".gradle") || fileName.endsWith(".gradle.kts") || fileName.endsWith(".versions.toml")
+
     override fun getSyncStateFlow(project: Project) = flow {
         emit(true)
         project.awaitExternalSystemInitialization()
@@ -95,7 +102,9 @@ class GradleSyncNotifierService : ExternalSystemTaskNotificationListenerAdapter(
 
     override fun onEnd(id: ExternalSystemTaskId) {
         if (isResolveTask(id)) {
-            id.findProject()?.service<State>()?.value = false
+            val project = id.findProject() ?: return
+            project.clearCachedDeclarations()
+            project.service<State>().value = false
         }
     }
 }
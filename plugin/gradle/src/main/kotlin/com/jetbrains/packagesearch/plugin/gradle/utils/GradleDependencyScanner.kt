@@ -0,0 +1,311 @@
+package com.jetbrains.packagesearch.plugin.gradle.utils
+
+import com.jetbrains.packagesearch.plugin.core.extensions.DependencyDeclarationIndexes
+import com.jetbrains.packagesearch.plugin.gradle.GradleDependencyModel
+
+/**
+ * Finds the dependencies declared in a Gradle build file, Groovy or Kotlin, by lexing its text
+ * instead of building the Gradle DSL model of the module.
+ *
+ * Only the common forms of the top-level `dependencies` block are understood:
+ * ```
+ * implementation("group:artifact:version")   // Kotlin
+ * implementation 'group:artifact:version'    // Groovy
+ * implementation(project(":module"))         // not an artifact, skipped
+ * ```
+ * [scan] gives up, returning null, as soon as the file may declare dependencies in any other way:
+ * version catalog accessors, platforms, interpolated strings, configuration closures, nested
+ * `dependencies` blocks or scripts applied from other files. The DSL model is needed for those.
+ *
+ * Offsets match the ones the DSL model gives: the declaration starts at the configuration name
+ * and the version at the first character of the coordinates string.
+ */
+object GradleDependencyScanner {
+
+    private enum class TokenType {
+        IDENTIFIER, STRING, UNSUPPORTED_STRING, LEFT_PARENTHESIS, RIGHT_PARENTHESIS,
+        LEFT_BRACE, RIGHT_BRACE, COMMA, SEMICOLON, DOT, NEW_LINE, OTHER
+    }
+
+    private class Token(
+        val type: TokenType,
+        val start: Int,
+        val end: Int,
+        val contentStart: Int = start,
+        val contentEnd: Int = end,
+    )
+
+    /**
+     * Returns the artifacts declared in the top-level `dependencies` blocks of [text], in order,
+     * or null if [text] contains declarations this scanner does not understand.
+     */
+    fun scan(text: CharSequence): List<GradleDependencyModel>? {
+        val tokens = tokenize(text)
+        val dependencies = mutableListOf<GradleDependencyModel>()
+        val blocks = ArrayDeque<String?>()
+        var index = 0
+        while (index < tokens.size) {
+            val token = tokens[index]
+            when (token.type) {
+                TokenType.LEFT_BRACE -> {
+                    val previous = tokens.getOrNull(index - 1)
+                    blocks.addLast(previous?.takeIf { it.type == TokenType.IDENTIFIER }?.text(text))
+                    index++
+                }
+
+                TokenType.RIGHT_BRACE -> {
+                    blocks.removeLastOrNull()
+                    index++
+                }
+
+                TokenType.IDENTIFIER -> when (token.text(text)) {
+                    "dependencies" -> {
+                        val isTopLevelBlock = blocks.isEmpty()
+                            && tokens.getOrNull(index - 1)?.type != TokenType.DOT
+                            && tokens.getOrNull(index + 1)?.type == TokenType.LEFT_BRACE
+                        when {
+                            isTopLevelBlock -> index = scanDependenciesBlock(text, tokens, index + 1, dependencies)
+                                ?: return null
+
+                            // dependencies of the build script are not the ones of the module
+                            blocks.firstOrNull() == "buildscript" -> index++
+                            else -> return null
+                        }
+                    }
+
+                    "apply" -> when {
+                        blocks.isEmpty() && appliesScript(text, tokens, index) -> return null
+                        else -> index++
+                    }
+
+                    else -> index++
+                }
+
+                else -> index++
+            }
+        }
+        return dependencies
+    }
+
+    /**
+     * Scans the `dependencies` block opened at [braceIndex] and returns the index of the token
+     * following it, or null if one of its statements is not understood.
+     */
+    private fun scanDependenciesBlock(
+        text: CharSequence,
+        tokens: List<Token>,
+        braceIndex: Int,
+        dependencies: MutableList<GradleDependencyModel>,
+    ): Int? {
+        val statement = mutableListOf<Token>()
+        var parentheses = 0
+        var index = braceIndex + 1
+        while (index < tokens.size) {
+            val token = tokens[index]
+            when (token.type) {
+                TokenType.LEFT_PARENTHESIS -> {
+                    parentheses++
+                    statement.add(token)
+                }
+
+                TokenType.RIGHT_PARENTHESIS -> {
+                    parentheses--
+                    statement.add(token)
+                }
+
+                // configuration closures, constraints and the like
+                TokenType.LEFT_BRACE -> return null
+
+                TokenType.RIGHT_BRACE -> return when {
+                    parentheses == 0 && scanStatement(text, statement, dependencies) -> index + 1
+                    else -> null
+                }
+
+                TokenType.NEW_LINE, TokenType.SEMICOLON -> {
+                    // statements go on across lines within parentheses or after a comma
+                    val isStatementEnd = parentheses == 0 && statement.lastOrNull()?.type != TokenType.COMMA
+                    if (isStatementEnd) {
+                        if (!scanStatement(text, statement, dependencies)) return null
+                        statement.clear()
+                    }
+                }
+
+                else -> statement.add(token)
+            }
+            index++
+        }
+        return null
+    }
+
+    private fun scanStatement(
+        text: CharSequence,
+        statement: List<Token>,
+        dependencies: MutableList<GradleDependencyModel>,
+    ): Boolean {
+        if (statement.isEmpty()) return true
+        val configuration = statement.first().takeIf { it.type == TokenType.IDENTIFIER } ?: return false
+        val arguments = statement.subList(1, statement.size)
+        val coordinatesToken = when {
+            arguments.size == 1 -> arguments.single()
+            arguments.size == 3
+                && arguments.first().type == TokenType.LEFT_PARENTHESIS
+                && arguments.last().type == TokenType.RIGHT_PARENTHESIS -> arguments[1]
+
+            else -> return isProjectDependency(text, arguments)
+        }
+        if (coordinatesToken.type != TokenType.STRING) return false
+        val coordinates = text.subSequence(coordinatesToken.contentStart, coordinatesToken.contentEnd)
+            .split(':')
+        val isSupported = coordinates.size in 2..3
+            && coordinates.none { part -> part.isEmpty() || part.any { it.isWhitespace() || it == '@' } }
+        if (!isSupported) return false
+        dependencies.add(
+            GradleDependencyModel(
+                groupId = coordinates[0],
+                artifactId = coordinates[1],
+                version = coordinates.getOrNull(2),
+                configuration = configuration.text(text),
+                indexes = DependencyDeclarationIndexes(
+                    declarationStartIndex = configuration.start,
+                    versionStartIndex = coordinatesToken.contentStart,
+                ),
+            )
+        )
+        return true
+    }
+
+    private fun isProjectDependency(text: CharSequence, arguments: List<Token>): Boolean {
+        val isWrapped = arguments.size > 2
+            && arguments.first().type == TokenType.LEFT_PARENTHESIS
+            && arguments.last().type == TokenType.RIGHT_PARENTHESIS
+        val call = if (isWrapped) arguments.subList(1, arguments.size - 1) else arguments
+        return call.size >= 3
+            && call[0].type == TokenType.IDENTIFIER && call[0].text(text) == "project"
+            && call[1].type == TokenType.LEFT_PARENTHESIS
+            && call.last().type == TokenType.RIGHT_PARENTHESIS
+    }
+
+    /**
+     * Returns the paths, as written in [text], of the scripts applied with `apply from` and of the
+     * builds included with `includeBuild`. Paths that are not plain strings are skipped.
+     */
+    fun scanReferencedPaths(text: CharSequence): List<String> {
+        val tokens = tokenize(text)
+        return tokens.indices.mapNotNull { index ->
+            val token = tokens[index]
+            if (token.type != TokenType.IDENTIFIER) return@mapNotNull null
+            val arguments = when (token.text(text)) {
+                "apply" -> statementAfter(tokens, index).dropWhile { !it.isIdentifier(text, "from") }
+                "includeBuild" -> statementAfter(tokens, index)
+                else -> return@mapNotNull null
+            }
+            arguments.firstOrNull { it.type == TokenType.STRING }
+                ?.let { text.substring(it.contentStart, it.contentEnd) }
+        }
+    }
+
+    /**
+     * Whether the `apply` statement at [index] applies a script, like `apply from: 'deps.gradle'`,
+     * whose dependencies the DSL model would include.
+     */
+    private fun appliesScript(text: CharSequence, tokens: List<Token>, index: Int): Boolean =
+        statementAfter(tokens, index).any { it.isIdentifier(text, "from") }
+
+    /**
+     * The tokens of the statement started by the token at [index], up to the end of its line
+     * outside of parentheses or the block it opens.
+     */
+    private fun statementAfter(tokens: List<Token>, index: Int): List<Token> {
+        var parentheses = 0
+        for (end in index + 1 until tokens.size) {
+            when (tokens[end].type) {
+                TokenType.LEFT_PARENTHESIS -> parentheses++
+                TokenType.RIGHT_PARENTHESIS -> parentheses--
+                TokenType.NEW_LINE, TokenType.SEMICOLON, TokenType.LEFT_BRACE ->
+                    if (parentheses <= 0) return tokens.subList(index + 1, end)
+
+                else -> {}
+            }
+        }
+        return tokens.subList(index + 1, tokens.size)
+    }
+
+    private fun tokenize(text: CharSequence): List<Token> {
+        val tokens = mutableListOf<Token>()
+        var index = 0
+        while (index < text.length) {
+            val char = text[index]
+            when {
+                char == '\n' -> tokens.add(Token(TokenType.NEW_LINE, index, ++index))
+                char.isWhitespace() -> index++
+                text.startsWith("//", index) ->
+                    index = text.indexOf('\n', index).takeIf { it >= 0 } ?: text.length
+
+                text.startsWith("/*", index) ->
+                    index = text.indexOf("*/", index + 2).takeIf { it >= 0 }?.plus(2) ?: text.length
+
+                char == '"' || char == '\'' -> {
+                    val string = readString(text, index)
+                    tokens.add(string)
+                    index = string.end
+                }
+
+                char.isJavaIdentifierStart() -> {
+                    val start = index
+                    while (index < text.length && text[index].isJavaIdentifierPart()) index++
+                    tokens.add(Token(TokenType.IDENTIFIER, start, index))
+                }
+
+                else -> tokens.add(Token(symbolType(char), index, ++index))
+            }
+        }
+        return tokens
+    }
+
+    /**
+     * Reads the string starting at [start], either quoted or triple-quoted. Strings with escapes
+     * or `$` are unsupported, as their value may differ from their text.
+     */
+    private fun readString(text: CharSequence, start: Int): Token {
+        val quote = text[start]
+        val delimiter = if (text.startsWith("$quote$quote$quote", start)) "$quote$quote$quote" else "$quote"
+        val contentStart = start + delimiter.length
+        var index = contentStart
+        var isSupported = true
+        while (index < text.length && !text.startsWith(delimiter, index)) {
+            when (text[index]) {
+                '\\' -> {
+                    isSupported = false
+                    index++
+                }
+
+                '$', '\n' -> isSupported = false
+            }
+            index++
+        }
+        val contentEnd = index.coerceAtMost(text.length)
+        return Token(
+            type = if (isSupported) TokenType.STRING else TokenType.UNSUPPORTED_STRING,
+            start = start,
+            end = (contentEnd + delimiter.length).coerceAtMost(text.length),
+            contentStart = contentStart,
+            contentEnd = contentEnd,
+        )
+    }
+
+    private fun symbolType(char: Char) = when (char) {
+        '(' -> TokenType.LEFT_PARENTHESIS
+        ')' -> TokenType.RIGHT_PARENTHESIS
+        '{' -> TokenType.LEFT_BRACE
+        '}' -> TokenType.RIGHT_BRACE
+        ',' -> TokenType.COMMA
+        ';' -> TokenType.SEMICOLON
+        '.' -> TokenType.DOT
+        else -> TokenType.OTHER
+    }
+
+    private fun Token.text(text: CharSequence) = text.substring(start, end)
+
+    private fun Token.isIdentifier(text: CharSequence, name: String) =
+        type == TokenType.IDENTIFIER && this.text(text) == name
+}
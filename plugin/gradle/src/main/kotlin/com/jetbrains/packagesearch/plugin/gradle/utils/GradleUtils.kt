@@ -5,31 +5,36 @@ package com.jetbrains.packagesearch.plugin.gradle.utils
 
 import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel
 import com.intellij.buildsystem.model.unified.UnifiedDependencyRepository
-import com.intellij.openapi.application.readAction
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.fileEditor.FileDocumentManager
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.Project
-import com.intellij.openapi.vfs.toNioPathOrNull
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.openapi.vfs.LocalFileSystem
 import com.jetbrains.packagesearch.plugin.core.data.IconProvider
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredRepository
+import com.jetbrains.packagesearch.plugin.core.extensions.DependencyDeclarationIndexes
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
-import com.jetbrains.packagesearch.plugin.core.utils.filesChangedEventFlow
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.buildFileChangesFlow
+import com.jetbrains.packagesearch.plugin.core.utils.cachedDeclarations
+import com.jetbrains.packagesearch.plugin.core.utils.hasCachedDeclarations
 import com.jetbrains.packagesearch.plugin.core.utils.icon
-import com.jetbrains.packagesearch.plugin.core.utils.isSameFileAsSafe
-import com.jetbrains.packagesearch.plugin.core.utils.mapUnit
+import com.jetbrains.packagesearch.plugin.core.utils.packageSearchReadAction
 import com.jetbrains.packagesearch.plugin.core.utils.watchExternalFileChanges
 import com.jetbrains.packagesearch.plugin.gradle.GradleDependencyModel
 import com.jetbrains.packagesearch.plugin.gradle.PackageSearchGradleDeclaredPackage
 import com.jetbrains.packagesearch.plugin.gradle.PackageSearchGradleDeclaredRepository
 import com.jetbrains.packagesearch.plugin.gradle.packageId
 import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel
+import java.nio.file.Path
 import java.nio.file.Paths
 import kotlin.contracts.ExperimentalContracts
 import kotlin.contracts.contract
 import kotlin.io.path.Path
+import kotlin.io.path.readText
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.flow
-import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.merge
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
@@ -50,66 +55,189 @@ val globalGradlePropertiesPath
 val knownGradleAncillaryFilesFiles
     get() = listOf("gradle.properties", "local.properties", "gradle/libs.versions.toml")
 
-fun getModuleChangesFlow(model: PackageSearchGradleJavaModel): Flow<Unit> {
-    val knownFiles = buildSet {
-        if (model.buildFilePath != null) {
-            add(Path(model.buildFilePath))
+val knownGradleBuildFiles
+    get() = listOf("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts")
+
+/**
+ * The build file of the project and the files its declarations may depend on: the version catalog
+ * and other ancillary files, the scripts it applies, the build and settings files of the root
+ * project, and the ones of `buildSrc` and of the builds the settings include.
+ */
+val PackageSearchGradleJavaModel.knownFiles: List<Path>
+    get() = buildSet {
+        val rootProjectDir = Path(rootProjectPath)
+        if (buildFilePath != null) {
+            val buildFile = Path(buildFilePath)
+            add(buildFile)
+            addAll(buildFile.referencedFiles(Path(projectDir)))
         }
         addAll(
             knownGradleAncillaryFilesFiles.flatMap {
                 listOf(
-                    Path(model.rootProjectPath).resolve(it),
-                    Path(model.projectDir).resolve(it),
+                    rootProjectDir.resolve(it),
+                    Path(projectDir).resolve(it),
                 )
             }
         )
-    }
+        addAll(knownGradleBuildFiles.map { rootProjectDir.resolve(it) })
+        addAll(knownGradleBuildFiles.map { rootProjectDir.resolve("buildSrc").resolve(it) })
+        knownGradleBuildFiles.filter { it.startsWith("settings") }
+            .forEach { addAll(rootProjectDir.resolve(it).referencedFiles(rootProjectDir)) }
+    }.toList()
 
-    val buildFileChanges = filesChangedEventFlow
-        .map { it.mapNotNull { it.file?.toNioPathOrNull() } }
-        .filter { changes -> changes.any { change -> knownFiles.any { it.isSameFileAsSafe(change) } } }
-        .mapUnit()
+/**
+ * The files referenced by this script, as found by [GradleDependencyScanner.scanReferencedPaths]
+ * and resolved against [baseDir]: applied scripts, and the build and settings files of included
+ * builds.
+ */
+private fun Path.referencedFiles(baseDir: Path): List<Path> =
+    runCatching { readText() }.getOrNull()
+        ?.let { GradleDependencyScanner.scanReferencedPaths(it) }
+        .orEmpty()
+        .filter { "://" !in it }
+        .flatMap { referencedPath ->
+            val referenced = baseDir.resolve(referencedPath).normalize()
+            when {
+                referencedPath.endsWith(".gradle") || referencedPath.endsWith(".gradle.kts") -> listOf(referenced)
+                else -> knownGradleBuildFiles.map { referenced.resolve(it) }
+            }
+        }
 
-    return merge(
+fun getModuleChangesFlow(project: Project, model: PackageSearchGradleJavaModel): Flow<Unit> =
+    merge(
         watchExternalFileChanges(globalGradlePropertiesPath),
-        buildFileChanges,
+        project.buildFileChangesFlow(model.knownFiles),
     )
+
+suspend fun Module.retrieveGradleDependencyModel(): List<GradleDependencyModel> =
+    packageSearchReadAction("${Module::class.simpleName}#retrieveGradleDependencyModel") {
+        ProjectBuildModel.get(this.project).getModuleBuildModel(this)
+            ?.dependencies()
+            ?.artifacts()
+            ?.map { it.toGradleDependencyModel() }
+            ?: emptyList()
+    }
+
+private const val FAST_SCANNER_KEY = "packagesearch.plugin.gradle.fast.scanner"
+private const val FAST_SCANNER_VERIFICATION_KEY = "packagesearch.plugin.gradle.fast.scanner.verify"
+
+private val logger = Logger.getInstance(GradleDependencyScanner::class.java)
+
+/**
+ * Scans [buildFile] with [GradleDependencyScanner], returning null if it is not understood.
+ */
+suspend fun scanGradleDependencies(buildFile: Path): List<GradleDependencyModel>? {
+    val text = packageSearchReadAction("${GradleDependencyScanner::class.simpleName}#scan") {
+        LocalFileSystem.getInstance().findFileByNioFile(buildFile)
+            ?.let { FileDocumentManager.getInstance().getDocument(it) }
+            ?.immutableCharSequence
+    } ?: return null
+    return PackageSearchMetrics.measure("gradle.declarations.scan") { GradleDependencyScanner.scan(text) }
 }
 
-suspend fun Module.retrieveGradleDependencyModel(): List<GradleDependencyModel> = readAction {
-    ProjectBuildModel.get(this.project).getModuleBuildModel(this)
-        ?.dependencies()
-        ?.artifacts()
-        ?.map { it.toGradleDependencyModel() }
-        ?: emptyList()
+/**
+ * Lists the dependencies declared in the build file of the module with [GradleDependencyScanner],
+ * falling back to the Gradle DSL model when the scanner does not understand the build file.
+ *
+ * With the `packagesearch.plugin.gradle.fast.scanner.verify` registry key on, the DSL model is
+ * built as well: both paths are then timed side by side in [PackageSearchMetrics], as
+ * `gradle.declarations.scan` and `gradle.declarations.dsl`, and their differences are logged.
+ */
+private suspend fun Module.parseDeclaredDependencies(model: PackageSearchGradleJavaModel): List<GradleDependencyModel> {
+    val scanned = model.buildFilePath
+        ?.takeIf { Registry.`is`(FAST_SCANNER_KEY, true) }
+        ?.let { scanGradleDependencies(Path(it)) }
+    if (scanned == null) {
+        PackageSearchMetrics.increment("gradle.declarations.dsl.fallbacks")
+        return PackageSearchMetrics.measure("gradle.declarations.dsl") { retrieveGradleDependencyModel() }
+    }
+    if (Registry.`is`(FAST_SCANNER_VERIFICATION_KEY, false)) {
+        val parsed = PackageSearchMetrics.measure("gradle.declarations.dsl") { retrieveGradleDependencyModel() }
+        if (parsed != scanned) {
+            PackageSearchMetrics.increment("gradle.declarations.scan.mismatches")
+            logger.warn("Scanned dependencies of ${model.buildFilePath} differ from the DSL model: $scanned != $parsed")
+        }
+    }
+    return scanned
+}
+
+private const val GRADLE_DEPENDENCIES_PARSER = "gradle-dependencies"
+
+/**
+ * The external dependencies of the declarable configurations of the module, as Gradle saw them at
+ * sync time. Gradle knows nothing about where they are declared, and some of them may have been
+ * added by plugins rather than by the build file, hence they are only shown, read-only, until the
+ * build files are parsed.
+ */
+val PackageSearchGradleJavaModel.syncedDependencies: List<GradleDependencyModel>
+    get() = configurations.asSequence()
+        .filter { it.isCanBeDeclared }
+        .flatMap { configuration ->
+            configuration.dependencies.asSequence().map {
+                GradleDependencyModel(
+                    groupId = it.groupId,
+                    artifactId = it.artifactId,
+                    version = it.version,
+                    configuration = configuration.name,
+                    indexes = DependencyDeclarationIndexes.UNKNOWN,
+                )
+            }
+        }
+        .distinct()
+        .toList()
+
+/**
+ * Emits the declared packages of the module. If the build files have not been parsed since they
+ * last changed, the dependencies of the Gradle model are emitted first, so that the module can be
+ * shown without waiting for the parse; the parsed declarations, which carry the offsets needed by
+ * inspections and navigation, follow.
+ */
+fun Module.declaredDependenciesFlow(
+    context: PackageSearchModuleBuilderContext,
+    model: PackageSearchGradleJavaModel,
+): Flow<List<PackageSearchGradleDeclaredPackage>> = flow {
+    if (!project.hasCachedDeclarations(GRADLE_DEPENDENCIES_PARSER, model.knownFiles)) {
+        PackageSearchMetrics.increment("gradle.declarations.synced")
+        emit(model.syncedDependencies.toDeclaredPackages(context))
+    }
+    emit(getDeclaredDependencies(context, model))
 }
 
+/**
+ * Builds the declared packages of the module in two stages: the declarations parsed from the build
+ * files are reused as long as [PackageSearchGradleJavaModel.knownFiles] do not change, then their
+ * remote info is retrieved by package id from the shared package cache. Only the parse waits for
+ * its turn, see [PackageSearchModuleBuilderContext.withResolutionPriority].
+ */
 suspend fun Module.getDeclaredDependencies(
     context: PackageSearchModuleBuilderContext,
-): List<PackageSearchGradleDeclaredPackage> {
-    val declaredDependencies = retrieveGradleDependencyModel()
+    model: PackageSearchGradleJavaModel,
+): List<PackageSearchGradleDeclaredPackage> =
+    context.withResolutionPriority(Path(model.projectDir)) {
+        project.cachedDeclarations(GRADLE_DEPENDENCIES_PARSER, model.knownFiles) { parseDeclaredDependencies(model) }
+    }.toDeclaredPackages(context)
 
-    val distinctIds = declaredDependencies
-        .asSequence()
-        .map { it.packageId }
-        .distinct()
+private suspend fun List<GradleDependencyModel>.toDeclaredPackages(
+    context: PackageSearchModuleBuilderContext,
+): List<PackageSearchGradleDeclaredPackage> {
+    val remoteInfo = context.getDeclaredPackageInfoByIdHashes(
+        groupBy({ ApiPackage.hashPackageId(it.packageId) }, { it.version })
+            .mapValues { (_, versions) -> versions.filterNotNull().toSet() }
+    )
 
-    val remoteInfo = context.getPackageInfoByIdHashes(distinctIds.map { ApiPackage.hashPackageId(it) }.toSet())
-
-    return declaredDependencies
-        .map { declaredDependency ->
-            PackageSearchGradleDeclaredPackage(
-                id = declaredDependency.packageId,
-                declaredVersion = declaredDependency.version?.let { NormalizedVersion.from(it) },
-                remoteInfo = remoteInfo[declaredDependency.packageId] as? ApiMavenPackage,
-                icon = remoteInfo[declaredDependency.packageId]?.icon
-                    ?: IconProvider.Icons.MAVEN,
-                module = declaredDependency.groupId,
-                name = declaredDependency.artifactId,
-                configuration = declaredDependency.configuration,
-                declarationIndexes = declaredDependency.indexes,
-            )
-        }
+    return map { declaredDependency ->
+        PackageSearchGradleDeclaredPackage(
+            id = declaredDependency.packageId,
+            declaredVersion = declaredDependency.version?.let { NormalizedVersion.from(it) },
+            remoteInfo = remoteInfo[declaredDependency.packageId] as? ApiMavenPackage,
+            icon = remoteInfo[declaredDependency.packageId]?.icon
+                ?: IconProvider.Icons.MAVEN,
+            module = declaredDependency.groupId,
+            name = declaredDependency.artifactId,
+            configuration = declaredDependency.configuration,
+            declarationIndexes = declaredDependency.indexes,
+        )
+    }
 }
 
 internal val Project.initializeProjectFlow
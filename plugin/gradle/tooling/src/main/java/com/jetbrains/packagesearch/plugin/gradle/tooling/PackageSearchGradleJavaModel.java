@@ -38,9 +38,16 @@ public interface PackageSearchGradleJavaModel extends Serializable {
         boolean isCanBeConsumed();
     }
 
+    /**
+     * An external module dependency as declared in a configuration at sync time.
+     */
     interface Dependency extends Serializable {
         String getGroupId();
         String getArtifactId();
+
+        /**
+         * The declared version, null when it comes from a platform or a BOM.
+         */
         String getVersion();
     }
 
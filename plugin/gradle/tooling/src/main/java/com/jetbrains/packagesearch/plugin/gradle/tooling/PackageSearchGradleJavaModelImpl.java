@@ -4,6 +4,7 @@ import com.intellij.serialization.PropertyMapping;
 import kotlinx.serialization.Serializable;
 
 import java.util.List;
+import java.util.Objects;
 
 public class PackageSearchGradleJavaModelImpl implements PackageSearchGradleJavaModel {
 
@@ -151,6 +152,19 @@ public class PackageSearchGradleJavaModelImpl implements PackageSearchGradleJava
         public String getName() {
             return name;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DeclaredRepositoryImpl)) return false;
+            DeclaredRepositoryImpl that = (DeclaredRepositoryImpl) o;
+            return Objects.equals(url, that.url) && Objects.equals(name, that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, name);
+        }
     }
 
     static public class DependencyImpl implements Dependency {
@@ -180,36 +194,59 @@ public class PackageSearchGradleJavaModelImpl implements PackageSearchGradleJava
         public String getVersion() {
             return version;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DependencyImpl)) return false;
+            DependencyImpl that = (DependencyImpl) o;
+            return Objects.equals(group, that.group)
+                    && Objects.equals(artifact, that.artifact)
+                    && Objects.equals(version, that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(group, artifact, version);
+        }
     }
 
     static public class ConfigurationImpl implements Configuration {
 
+        public static final byte RESOLVABLE = 1;
+        public static final byte DECLARABLE = 1 << 1;
+        public static final byte CONSUMABLE = 1 << 2;
+
         private final String name;
         private final List<Dependency> dependencies;
 
-        private final boolean canBeResolved;
-        private final boolean canBeDeclared;
-        private final boolean canBeConsumed;
+        /**
+         * The roles of the configuration, as a combination of {@link #RESOLVABLE},
+         * {@link #DECLARABLE} and {@link #CONSUMABLE}.
+         */
+        private final byte roles;
 
         @PropertyMapping({
                 "name",
                 "dependencies",
-                "canBeResolved",
-                "canBeDeclared",
-                "canBeConsumed"
+                "roles"
         })
         public ConfigurationImpl(
                 String name,
                 List<Dependency> dependencies,
-                boolean canBeResolved,
-                boolean canBeDeclared,
-                boolean canBeConsumed
+                byte roles
         ) {
             this.name = name;
             this.dependencies = dependencies;
-            this.canBeResolved = canBeResolved;
-            this.canBeDeclared = canBeDeclared;
-            this.canBeConsumed = canBeConsumed;
+            this.roles = roles;
+        }
+
+        public static byte roles(boolean canBeResolved, boolean canBeDeclared, boolean canBeConsumed) {
+            byte roles = 0;
+            if (canBeResolved) roles |= RESOLVABLE;
+            if (canBeDeclared) roles |= DECLARABLE;
+            if (canBeConsumed) roles |= CONSUMABLE;
+            return roles;
         }
 
         @Override
@@ -224,17 +261,32 @@ public class PackageSearchGradleJavaModelImpl implements PackageSearchGradleJava
 
         @Override
         public boolean isCanBeResolved() {
-            return canBeResolved;
+            return (roles & RESOLVABLE) != 0;
         }
 
         @Override
         public boolean isCanBeDeclared() {
-            return canBeDeclared;
+            return (roles & DECLARABLE) != 0;
         }
 
         @Override
         public boolean isCanBeConsumed() {
-            return canBeConsumed;
+            return (roles & CONSUMABLE) != 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConfigurationImpl)) return false;
+            ConfigurationImpl that = (ConfigurationImpl) o;
+            return roles == that.roles
+                    && Objects.equals(name, that.name)
+                    && Objects.equals(dependencies, that.dependencies);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, dependencies, roles);
         }
     }
 }
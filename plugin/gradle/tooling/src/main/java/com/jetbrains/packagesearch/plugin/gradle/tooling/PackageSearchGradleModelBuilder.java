@@ -1,58 +1,123 @@
 package com.jetbrains.packagesearch.plugin.gradle.tooling;
 
 import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel.DeclaredRepository;
-import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModelImpl.DeclaredRepositoryImpl;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ExternalModuleDependency;
 import org.gradle.api.artifacts.repositories.ArtifactRepository;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
 import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.api.invocation.Gradle;
 import org.gradle.util.GradleVersion;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.gradle.tooling.AbstractModelBuilderService;
 import org.jetbrains.plugins.gradle.tooling.Message;
+import org.jetbrains.plugins.gradle.tooling.MessageReporter;
 import org.jetbrains.plugins.gradle.tooling.ModelBuilderContext;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Builds the {@link PackageSearchGradleJavaModel} of each project of a build.
+ * <p>
+ * Gradle may fetch the models of different projects in parallel and, with isolated projects, fails
+ * the sync when a project reads the state of another one. The model of a project is therefore built
+ * from that project alone: the few values about the root project come from the APIs Gradle allows
+ * for it. They are interned in the daemon, but each project model still carries them.
+ */
 @SuppressWarnings("UnstableApiUsage")
 public class PackageSearchGradleModelBuilder extends AbstractModelBuilderService {
 
+    /**
+     * One interner per model fetch, shared by the models of all the projects of the build while
+     * they are built in the daemon.
+     */
+    private static final ModelBuilderContext.DataProvider<PackageSearchGradleModelInterner> INTERNER_PROVIDER =
+            new ModelBuilderContext.DataProvider<PackageSearchGradleModelInterner>() {
+                @NotNull
+                @Override
+                public PackageSearchGradleModelInterner create(
+                        @NotNull Gradle gradle,
+                        @NotNull MessageReporter messageReporter
+                ) {
+                    return new PackageSearchGradleModelInterner();
+                }
+            };
+
+    /**
+     * System property of the build naming a file to which each model build appends the identity
+     * path of its project, its thread and its start and end times in nanoseconds. Tests use it to
+     * check that the models of different projects are built concurrently; while it is set, each
+     * build lasts at least {@link #TRACE_MIN_DURATION_MILLIS} so that concurrent builds overlap.
+     */
+    static final String TRACE_FILE_PROPERTY = "packagesearch.gradle.model.trace";
+
+    private static final long TRACE_MIN_DURATION_MILLIS = 500;
+
+    private static final Object TRACE_LOCK = new Object();
+
     @Override
     public PackageSearchGradleJavaModel buildAll(
             @NotNull String modelName,
             @NotNull Project project,
             @NotNull ModelBuilderContext context
     ) {
+        String traceFile = System.getProperty(TRACE_FILE_PROPERTY);
+        if (traceFile == null) return buildModel(project, context);
+
+        long start = System.nanoTime();
+        PackageSearchGradleJavaModel model = buildModel(project, context);
+        try {
+            Thread.sleep(TRACE_MIN_DURATION_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String line = model.getProjectIdentityPath() + " " + Thread.currentThread().getName().replace(' ', '_')
+                + " " + start + " " + System.nanoTime() + System.lineSeparator();
+        synchronized (TRACE_LOCK) {
+            try {
+                Files.write(
+                        Paths.get(traceFile),
+                        line.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND
+                );
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write the model build trace to " + traceFile, e);
+            }
+        }
+        return model;
+    }
+
+    private PackageSearchGradleJavaModel buildModel(@NotNull Project project, @NotNull ModelBuilderContext context) {
+        PackageSearchGradleModelInterner interner = context.getData(INTERNER_PROVIDER);
 
         List<PackageSearchGradleJavaModel.Configuration> configurations =
                 new ArrayList<>(project.getConfigurations().size());
 
         GradleVersion currentGradleVersion = GradleVersion.current();
         for (Configuration configuration : project.getConfigurations()) {
-            List<PackageSearchGradleJavaModel.Dependency> dependencies =
-                    new ArrayList<>(configuration.getDependencies().size());
-
-            for (Dependency dependency : configuration.getDependencies()) {
-                String group = dependency.getGroup();
-                String version = dependency.getVersion();
-
-                if (group == null || version == null) continue;
-
-                dependencies.add(new PackageSearchGradleJavaModelImpl.DependencyImpl(group, dependency.getName(), version));
-            }
-
+            // before 8.2 roles cannot tell declarable configurations apart, as legacy ones like
+            // annotationProcessor are resolvable too: all of them are considered declarable
             boolean isCanBeDeclared = true;
             if (currentGradleVersion.compareTo(GradleVersion.version("8.2")) >= 0) {
                 isCanBeDeclared = configuration.isCanBeDeclared();
             }
 
             configurations.add(
-                    new PackageSearchGradleJavaModelImpl.ConfigurationImpl(
+                    interner.configuration(
                             configuration.getName(),
-                            dependencies,
+                            isCanBeDeclared
+                                    ? getDeclaredDependencies(configuration, interner)
+                                    : Collections.<PackageSearchGradleJavaModel.Dependency>emptyList(),
                             configuration.isCanBeResolved(),
                             isCanBeDeclared,
                             configuration.isCanBeConsumed()
@@ -67,7 +132,7 @@ public class PackageSearchGradleModelBuilder extends AbstractModelBuilderService
             if (repository instanceof MavenArtifactRepository) {
                 MavenArtifactRepository mavenRepository = (MavenArtifactRepository) repository;
                 repositories.add(
-                        new DeclaredRepositoryImpl(
+                        interner.repository(
                                 mavenRepository.getUrl().toString(),
                                 mavenRepository.getName()
                         )
@@ -75,8 +140,7 @@ public class PackageSearchGradleModelBuilder extends AbstractModelBuilderService
             }
         }
 
-        String projectIdentityPath = currentGradleVersion.compareTo(GradleVersion.version("3.3")) >= 0 ?
-                ((ProjectInternal) project).getIdentityPath().getPath() : project.getPath();
+        String projectIdentityPath = getProjectIdentityPath(project, currentGradleVersion);
 
         String buildFilePath = null;
 
@@ -87,20 +151,64 @@ public class PackageSearchGradleModelBuilder extends AbstractModelBuilderService
         return new PackageSearchGradleJavaModelImpl(
                 project.getProjectDir().getAbsolutePath(),
                 project.getName(),
-                project.getRootProject().getName(),
+                interner.string(getRootProjectName(project, currentGradleVersion)),
                 projectIdentityPath,
-                configurations,
-                repositories,
+                interner.list(configurations),
+                interner.list(repositories),
                 project.getPluginManager().hasPlugin("org.gradle.java"),
                 project.getPluginManager().hasPlugin("org.jetbrains.amper.settings.plugin"),
                 project.getPluginManager().hasPlugin("org.jetbrains.kotlin.multiplatform"),
                 project.getPluginManager().hasPlugin("org.jetbrains.kotlin.android"),
                 buildFilePath,
-                project.getRootProject().getProjectDir().getAbsolutePath(),
-                currentGradleVersion.getVersion()
+                interner.string(project.getRootDir().getAbsolutePath()),
+                interner.string(currentGradleVersion.getVersion())
         );
     }
 
+    /**
+     * Only declarable configurations carry dependencies: the IDE never reads those of resolvable or
+     * consumable ones, which on Android and Kotlin Multiplatform builds are the vast majority.
+     */
+    private static List<PackageSearchGradleJavaModel.Dependency> getDeclaredDependencies(
+            Configuration configuration,
+            PackageSearchGradleModelInterner interner
+    ) {
+        List<PackageSearchGradleJavaModel.Dependency> dependencies =
+                new ArrayList<>(configuration.getDependencies().size());
+
+        for (Dependency dependency : configuration.getDependencies()) {
+            // project and file dependencies cannot be looked up, while versionless
+            // ones are still declared, their version coming from a platform or a BOM
+            if (!(dependency instanceof ExternalModuleDependency)) continue;
+
+            String group = dependency.getGroup();
+            String version = dependency.getVersion();
+
+            if (group == null) continue;
+
+            dependencies.add(interner.dependency(group, dependency.getName(), version));
+        }
+        return dependencies;
+    }
+
+    private static String getProjectIdentityPath(Project project, GradleVersion gradleVersion) {
+        if (gradleVersion.compareTo(GradleVersion.version("8.3")) >= 0) {
+            return project.getBuildTreePath();
+        }
+        if (gradleVersion.compareTo(GradleVersion.version("3.3")) >= 0) {
+            return ((ProjectInternal) project).getIdentityPath().getPath();
+        }
+        return project.getPath();
+    }
+
+    private static String getRootProjectName(Project project, GradleVersion gradleVersion) {
+        if (gradleVersion.compareTo(GradleVersion.version("8.8")) >= 0) {
+            return project.getIsolated().getRootProject().getName();
+        }
+        // isolated projects are not usable before 8.8, reading the root project is safe
+        return project.getRootProject().getName();
+    }
+
     @Override
     public boolean canBuild(String modelName) {
         return modelName.equals(PackageSearchGradleJavaModel.class.getName());
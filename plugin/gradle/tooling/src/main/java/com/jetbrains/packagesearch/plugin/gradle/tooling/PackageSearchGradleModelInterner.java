@@ -0,0 +1,76 @@
+package com.jetbrains.packagesearch.plugin.gradle.tooling;
+
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModelImpl.ConfigurationImpl;
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModelImpl.DeclaredRepositoryImpl;
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModelImpl.DependencyImpl;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the values found in the Package Search models of a build.
+ * <p>
+ * The projects of a large build share most of their strings, their repositories and many of their
+ * configurations. Models built with the same interner reference a single instance for each distinct
+ * value, which is kept once in the memory of the Gradle daemon while the models are built.
+ * <p>
+ * This is not a build-level table: each model is serialized on its own, so every payload still
+ * carries the values it references. Only values repeated within a single model, like the
+ * dependency lists shared by several of its configurations, are written once, which saves a few
+ * percent of the payload.
+ * <p>
+ * Safe to use from models built in parallel.
+ */
+public final class PackageSearchGradleModelInterner {
+
+    private final ConcurrentHashMap<Object, Object> instances = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private <T> T intern(T value) {
+        if (value == null) return null;
+        Object existing = instances.putIfAbsent(value, value);
+        return existing != null ? (T) existing : value;
+    }
+
+    public String string(String value) {
+        return intern(value);
+    }
+
+    /**
+     * Returns the canonical instance of a list equal to {@code values}. The list must not be modified afterwards.
+     */
+    public <T> List<T> list(List<T> values) {
+        return intern(values);
+    }
+
+    public PackageSearchGradleJavaModel.Dependency dependency(String group, String artifact, String version) {
+        return intern(new DependencyImpl(string(group), string(artifact), string(version)));
+    }
+
+    public PackageSearchGradleJavaModel.DeclaredRepository repository(String url, String name) {
+        return intern(new DeclaredRepositoryImpl(string(url), string(name)));
+    }
+
+    public PackageSearchGradleJavaModel.Configuration configuration(
+            String name,
+            List<PackageSearchGradleJavaModel.Dependency> dependencies,
+            boolean canBeResolved,
+            boolean canBeDeclared,
+            boolean canBeConsumed
+    ) {
+        return intern(
+                new ConfigurationImpl(
+                        string(name),
+                        list(dependencies),
+                        ConfigurationImpl.roles(canBeResolved, canBeDeclared, canBeConsumed)
+                )
+        );
+    }
+
+    /**
+     * The number of distinct values interned so far.
+     */
+    public int size() {
+        return instances.size();
+    }
+}
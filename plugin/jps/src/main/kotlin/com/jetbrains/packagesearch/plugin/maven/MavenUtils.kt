@@ -149,12 +149,11 @@ suspend fun Module.getDeclaredDependencies(): List<PackageSearchDeclaredJpsPacka
             ?: emptyList()
     }.distinct()
 
-    val distinctIds = declaredDependencies
-        .asSequence()
-        .map { it.packageId }
-        .distinct()
-
-    val remoteInfo = getPackageInfoByIdHashes(distinctIds.map { ApiPackage.hashPackageId(it) }.toSet())
+    val remoteInfo = getDeclaredPackageInfoByIdHashes(
+        declaredDependencies
+            .groupBy({ ApiPackage.hashPackageId(it.packageId) }, { it.version })
+            .mapValues { (_, versions) -> versions.filterNotNull().toSet() }
+    )
 
     return declaredDependencies
         .associateBy { it.packageId }
@@ -8,6 +8,7 @@ import com.intellij.openapi.vfs.toNioPathOrNull
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleProvider
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
 import com.jetbrains.packagesearch.plugin.core.utils.isSourceSet
 import com.jetbrains.packagesearch.plugin.core.utils.smartModeFlow
 import kotlinx.coroutines.flow.Flow
@@ -28,10 +29,14 @@ class MavenModuleProvider : PackageSearchModuleProvider {
         else -> context.project.smartModeFlow.take(1).flatMapLatest {
             when (val mavenProject = context.project.findMavenProjectFor(nativeModule)) {
                 null -> emptyFlow()
-                else -> when (val mavenProjectPath = mavenProject.file.toNioPathOrNull()) {
+                else -> when (mavenProject.file.toNioPathOrNull()) {
                     null -> emptyFlow()
-                    else -> getModuleChangesFlow(context, mavenProjectPath)
-                        .map { nativeModule.toPackageSearch(context, mavenProject) }
+                    else -> getModuleChangesFlow(context, mavenProject)
+                        .map {
+                            PackageSearchMetrics.measure("maven.transform") {
+                                nativeModule.toPackageSearch(context, mavenProject)
+                            }
+                        }
                 }
             }
         }
@@ -39,5 +44,7 @@ class MavenModuleProvider : PackageSearchModuleProvider {
 
     override fun getSyncStateFlow(project: Project): Flow<Boolean> =
         project.service<MavenSyncStateService.State>().asStateFlow()
+
+    override fun isBuildFile(fileName: String) = fileName == "pom.xml"
 }
 
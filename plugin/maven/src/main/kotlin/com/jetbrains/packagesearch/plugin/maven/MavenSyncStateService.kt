@@ -4,6 +4,7 @@ import com.intellij.openapi.components.Service
 import com.intellij.openapi.components.service
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.Project
+import com.jetbrains.packagesearch.plugin.core.utils.clearCachedDeclarations
 import kotlinx.coroutines.flow.MutableStateFlow
 import org.jetbrains.idea.maven.project.MavenImportListener
 import org.jetbrains.idea.maven.project.MavenProject
@@ -18,6 +19,7 @@ class MavenSyncStateService(private val project: Project) : MavenImportListener
     }
 
     override fun importFinished(importedProjects: MutableCollection<MavenProject>, newModules: MutableList<Module>) {
+        project.clearCachedDeclarations()
         project.service<State>().value = false
     }
 }
\ No newline at end of file
@@ -5,11 +5,9 @@ package com.jetbrains.packagesearch.plugin.maven
 
 import com.intellij.buildsystem.model.unified.UnifiedDependencyRepository
 import com.intellij.externalSystem.DependencyModifierService
-import com.intellij.openapi.application.readAction
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.VirtualFile
-import com.intellij.openapi.vfs.toNioPathOrNull
 import com.intellij.psi.xml.XmlText
 import com.jetbrains.packagesearch.plugin.core.data.EditModuleContext
 import com.jetbrains.packagesearch.plugin.core.data.IconProvider
@@ -19,11 +17,12 @@ import com.jetbrains.packagesearch.plugin.core.extensions.DependencyDeclarationI
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
 import com.jetbrains.packagesearch.plugin.core.extensions.ProjectContext
 import com.jetbrains.packagesearch.plugin.core.utils.asMavenApiPackage
-import com.jetbrains.packagesearch.plugin.core.utils.filesChangedEventFlow
+import com.jetbrains.packagesearch.plugin.core.utils.buildFileChangesFlow
+import com.jetbrains.packagesearch.plugin.core.utils.cachedDeclarations
 import com.jetbrains.packagesearch.plugin.core.utils.flow
 import com.jetbrains.packagesearch.plugin.core.utils.icon
-import com.jetbrains.packagesearch.plugin.core.utils.isSameFileAsSafe
 import com.jetbrains.packagesearch.plugin.core.utils.mapUnit
+import com.jetbrains.packagesearch.plugin.core.utils.packageSearchReadAction
 import com.jetbrains.packagesearch.plugin.core.utils.smartModeFlow
 import com.jetbrains.packagesearch.plugin.core.utils.watchExternalFileChanges
 import java.io.File
@@ -34,12 +33,15 @@ import kotlin.contracts.contract
 import kotlin.io.path.Path
 import kotlin.io.path.name
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.merge
+import kotlinx.coroutines.flow.onStart
 import nl.adaptivity.xmlutil.serialization.XML
 import org.jetbrains.idea.maven.dom.MavenDomUtil
 import org.jetbrains.idea.maven.dsl.MavenDependencyModificator
+import org.jetbrains.idea.maven.model.MavenId
 import org.jetbrains.idea.maven.project.MavenImportListener
 import org.jetbrains.idea.maven.project.MavenProject
 import org.jetbrains.idea.maven.project.MavenProjectsManager
@@ -53,7 +55,7 @@ import org.jetbrains.packagesearch.maven.decodeFromString
 import org.jetbrains.packagesearch.packageversionutils.normalization.NormalizedVersion
 
 suspend fun Project.findMavenProjectFor(module: Module): MavenProject? =
-    MavenProjectsManager.getInstance(this).let { readAction { it.findProject(module) } }
+    MavenProjectsManager.getInstance(this).let { packageSearchReadAction("${Project::class.simpleName}#findMavenProjectFor") { it.findProject(module) } }
 
 fun VirtualFile.asRegularFile() = File(path)
 fun String.suffixIfNot(s: String) = if (endsWith(s)) this else this + s
@@ -77,14 +79,45 @@ val Project.mavenImportFlow
         }
     }
 
-fun getModuleChangesFlow(context: ProjectContext, pomPath: Path): Flow<Unit> = merge(
+/**
+ * The POM of [mavenProject] followed by the POMs of the project it inherits or imports declarations
+ * from: its parents and the BOMs it imports, transitively. Declared versions and repositories may
+ * come from any of them.
+ */
+suspend fun Project.mavenBuildFiles(mavenProject: MavenProject): List<Path> =
+    packageSearchReadAction("${Project::class.simpleName}#mavenBuildFiles") {
+        val projectsManager = MavenProjectsManager.getInstance(this)
+        val buildFiles = linkedSetOf<Path>()
+        val pending = ArrayDeque(listOf(mavenProject))
+        while (pending.isNotEmpty()) {
+            val current = pending.removeFirst()
+            if (!buildFiles.add(Path(current.file.path))) continue
+            current.parentId
+                ?.let { projectsManager.findProject(it) }
+                ?.let { pending.add(it) }
+            MavenDomUtil.getMavenDomProjectModel(this, current.file)
+                ?.dependencyManagement
+                ?.dependencies
+                ?.dependencies
+                ?.filter { it.scope.stringValue == "import" }
+                ?.mapNotNull {
+                    val mavenId = MavenId(it.groupId.stringValue, it.artifactId.stringValue, it.version.stringValue)
+                    projectsManager.findProject(mavenId)
+                }
+                ?.let { pending.addAll(it) }
+        }
+        buildFiles.toList()
+    }
+
+fun getModuleChangesFlow(context: ProjectContext, mavenProject: MavenProject): Flow<Unit> = merge(
     watchExternalFileChanges(mavenSettingsFilePath),
     context.project.mavenImportFlow,
     context.project.smartModeFlow.mapUnit(),
-    filesChangedEventFlow
-        .map { it.mapNotNull { it.file?.toNioPathOrNull() } }
-        .filter { it.any { it.isSameFileAsSafe(pomPath) } }
-        .mapUnit(),
+    context.project.mavenImportFlow
+        .onStart { emit(Unit) }
+        .map { context.project.mavenBuildFiles(mavenProject) }
+        .distinctUntilChanged()
+        .flatMapLatest { context.project.buildFileChangesFlow(it) },
 )
 
 val xml = XML {
@@ -107,8 +140,9 @@ suspend fun Module.toPackageSearch(
     context: PackageSearchModuleBuilderContext,
     mavenProject: MavenProject,
 ): PackageSearchMavenModule {
-    val declaredDependencies = getDeclaredDependencies(context)
     val pomPath = Path(mavenProject.file.path)
+    val buildFiles = project.mavenBuildFiles(mavenProject)
+    val declaredDependencies = getDeclaredDependencies(context, pomPath, buildFiles)
     return PackageSearchMavenModule(
         name = mavenProject.mavenId.artifactId ?: mavenProject.name ?: pomPath.parent.name,
         identity = PackageSearchModule.Identity(
@@ -117,7 +151,7 @@ suspend fun Module.toPackageSearch(
             projectDir = pomPath.parent,
         ),
         buildFilePath = pomPath,
-        declaredRepositories = getDeclaredRepositories(context),
+        declaredRepositories = getDeclaredRepositories(context, pomPath, buildFiles),
         declaredDependencies = declaredDependencies,
         availableScopes = commonScopes.plus(declaredDependencies.mapNotNull { it.declaredScope }).distinct(),
         compatiblePackageTypes = buildPackageTypes {
@@ -127,8 +161,18 @@ suspend fun Module.toPackageSearch(
     )
 }
 
-private suspend fun Module.getDeclaredRepositories(context: PackageSearchModuleBuilderContext) =
-    readAction { DependencyModifierService.getInstance(project).declaredRepositories(this) }
+private suspend fun Module.getDeclaredRepositories(
+    context: PackageSearchModuleBuilderContext,
+    pomPath: Path,
+    buildFiles: List<Path>,
+) =
+    context.withResolutionPriority(pomPath.parent) {
+        project.cachedDeclarations("maven-repositories", buildFiles + mavenSettingsFilePath) {
+            packageSearchReadAction("${Module::class.simpleName}#getDeclaredRepositories") {
+                DependencyModifierService.getInstance(project).declaredRepositories(this)
+            }
+        }
+    }
         .mapNotNull { unifiedRepository ->
             PackageSearchDeclaredMavenRepository(
                 url = unifiedRepository.url ?: return@mapNotNull null,
@@ -138,10 +182,48 @@ private suspend fun Module.getDeclaredRepositories(context: PackageSearchModuleB
             )
         }
 
-suspend fun Module.getDeclaredDependencies(context: PackageSearchModuleBuilderContext): List<PackageSearchDeclaredMavenPackage> {
-    val declaredDependencies = readAction {
+/**
+ * Builds the declared packages of the module in two stages: the declarations parsed from [pomPath]
+ * are reused as long as none of its [buildFiles] change, see [mavenBuildFiles], then their remote
+ * info is retrieved by package id from the shared package cache.
+ */
+suspend fun Module.getDeclaredDependencies(
+    context: PackageSearchModuleBuilderContext,
+    pomPath: Path,
+    buildFiles: List<Path> = listOf(pomPath),
+): List<PackageSearchDeclaredMavenPackage> {
+    val declaredDependencies = context.withResolutionPriority(pomPath.parent) {
+        project.cachedDeclarations("maven-dependencies", buildFiles) {
+            parseDeclaredDependencies()
+        }
+    }
+
+    val remoteInfo = context.getDeclaredPackageInfoByIdHashes(
+        declaredDependencies
+            .groupBy({ ApiPackage.hashPackageId(it.packageId) }, { it.version })
+            .mapValues { (_, versions) -> versions.filterNotNull().toSet() }
+    )
+
+    return declaredDependencies
+        .associateBy { it.packageId }
+        .mapNotNull { (packageId, declaredDependency) ->
+            PackageSearchDeclaredMavenPackage(
+                id = packageId,
+                declaredVersion = declaredDependency.version?.let { NormalizedVersion.from(it) },
+                remoteInfo = remoteInfo[packageId]?.asMavenApiPackage(),
+                groupId = declaredDependency.groupId,
+                artifactId = declaredDependency.artifactId,
+                declaredScope = declaredDependency.scope,
+                declarationIndexes = declaredDependency.indexes,
+                icon = remoteInfo[packageId]?.icon ?: IconProvider.Icons.MAVEN
+            )
+        }
+}
+
+private suspend fun Module.parseDeclaredDependencies(): List<MavenDependencyModel> =
+    packageSearchReadAction("${Module::class.simpleName}#parseDeclaredDependencies") {
         MavenProjectsManager.getInstance(project)
-            .findProject(this@getDeclaredDependencies)
+            .findProject(this@parseDeclaredDependencies)
             ?.file
             ?.let { MavenDomUtil.getMavenDomProjectModel(project, it) }
             ?.dependencies
@@ -163,29 +245,6 @@ suspend fun Module.getDeclaredDependencies(context: PackageSearchModuleBuilderCo
             ?: emptyList()
     }.distinct()
 
-    val distinctIds = declaredDependencies
-        .asSequence()
-        .map { it.packageId }
-        .distinct()
-
-    val remoteInfo = context.getPackageInfoByIdHashes(distinctIds.map { ApiPackage.hashPackageId(it) }.toSet())
-
-    return declaredDependencies
-        .associateBy { it.packageId }
-        .mapNotNull { (packageId, declaredDependency) ->
-            PackageSearchDeclaredMavenPackage(
-                id = packageId,
-                declaredVersion = declaredDependency.version?.let { NormalizedVersion.from(it) },
-                remoteInfo = remoteInfo[packageId]?.asMavenApiPackage(),
-                groupId = declaredDependency.groupId,
-                artifactId = declaredDependency.artifactId,
-                declaredScope = declaredDependency.scope,
-                declarationIndexes = declaredDependency.indexes,
-                icon = remoteInfo[packageId]?.icon ?: IconProvider.Icons.MAVEN
-            )
-        }
-}
-
 
 fun EditModuleContext.validate(): MavenDependencyModificator {
     require(data is MavenDependencyModificator) {
@@ -12,4 +12,10 @@ object PackageSearchModuleBaseTransformerUtils {
     val extensionsFlow
         get() = extensionPointName.extensionsFlow()
 
+    /**
+     * @see PackageSearchModuleProvider.isBuildFile
+     */
+    fun isBuildFile(fileName: String) =
+        extensionPointName.extensionList.any { it.isBuildFile(fileName) }
+
 }
\ No newline at end of file
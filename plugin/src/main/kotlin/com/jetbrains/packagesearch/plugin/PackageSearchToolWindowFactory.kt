@@ -6,11 +6,13 @@ import com.intellij.openapi.wm.ToolWindow
 import com.intellij.openapi.wm.ToolWindowFactory
 import com.jetbrains.packagesearch.plugin.ui.PackageSearchTheme
 import com.jetbrains.packagesearch.plugin.ui.PackageSearchToolwindow
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchProjectService
 import com.jetbrains.packagesearch.plugin.utils.installActions
 import org.jetbrains.jewel.bridge.addComposeTab
 
 class PackageSearchToolWindowFactory : ToolWindowFactory, DumbAware {
     override fun createToolWindowContent(project: Project, toolWindow: ToolWindow) {
+        project.PackageSearchProjectService.activate()
         toolWindow.installActions(project)
         toolWindow.addComposeTab(PackageSearchBundle.message("packagesearch.title.tab")) {
             PackageSearchTheme(project) {
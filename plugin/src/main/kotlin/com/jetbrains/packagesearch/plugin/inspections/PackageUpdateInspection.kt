@@ -36,11 +36,14 @@ import com.intellij.profile.codeInspection.ProjectInspectionProfileManager
 import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiFile
 import com.jetbrains.packagesearch.plugin.PackageSearchBundle
+import com.jetbrains.packagesearch.plugin.PackageSearchModuleBaseTransformerUtils
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredMavenPackage
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredPackage
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDependencyManager
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchKnownRepositoriesContext
+import com.jetbrains.packagesearch.plugin.services.PackageSearchProjectService
+import com.jetbrains.packagesearch.plugin.services.isSnapshot
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchProjectService
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchSettingsService
 import kotlinx.coroutines.launch
@@ -54,10 +57,14 @@ abstract class PackageSearchInspection : LocalInspectionTool() {
         manager: InspectionManager,
         isOnTheFly: Boolean,
     ): Array<ProblemDescriptor> {
+        // checked before getting the service, so that other files do not instantiate it
+        if (!PackageSearchModuleBaseTransformerUtils.isBuildFile(file.name)) return emptyArray()
         val path = file.virtualFile.toNioPathOrNull() ?: return emptyArray()
 
-        val module = file.project.PackageSearchProjectService
-            .modulesByBuildFile.value[path] ?: return emptyArray()
+        val projectService = file.project.PackageSearchProjectService
+        projectService.activate()
+
+        val module = projectService.modulesByBuildFile.value[path] ?: return emptyArray()
 
         val problemsHolder = ProblemsHolder(manager, file, isOnTheFly)
 
@@ -160,6 +167,9 @@ class PackageUpdateInspection : PackageSearchInspection() {
                         priority = HIGH
                     ) {
                         context.coroutineScope.launch {
+                            val (module, manager, dependency) = project.PackageSearchProjectService
+                                .awaitEditable(module, manager, dependency)
+                                ?: return@launch
                             module.editModule {
                                 manager.updateDependency(
                                     context = this,
@@ -238,6 +248,33 @@ internal class RegisterProblemScope(private val psiElement: PsiElement) {
     fun getQuickfixes() = quickfixes.toTypedArray()
 }
 
+/**
+ * Modules restored from a snapshot cannot be edited: waits for the live module and returns
+ * it along with the live [manager] and [dependency] matching the given ones.
+ */
+private suspend fun PackageSearchProjectService.awaitEditable(
+    module: PackageSearchModule,
+    manager: PackageSearchDependencyManager,
+    dependency: PackageSearchDeclaredPackage,
+): Triple<PackageSearchModule, PackageSearchDependencyManager, PackageSearchDeclaredPackage>? {
+    if (!module.isSnapshot) return Triple(module, manager, dependency)
+    return when (val liveModule = awaitLiveModulesByIdentity()[module.identity]) {
+        is PackageSearchModule.Base -> liveModule.declaredDependencies
+            .firstOrNull { it.id == dependency.id && it.declaredScope == dependency.declaredScope }
+            ?.let { Triple(liveModule, liveModule, it) }
+
+        is PackageSearchModule.WithVariants -> {
+            val variantName = (dependency as? PackageSearchDeclaredPackage.WithVariant)?.variantName ?: return null
+            val variant = liveModule.variants[variantName] ?: return null
+            variant.declaredDependencies
+                .firstOrNull { it.id == dependency.id && it.declaredScope == dependency.declaredScope }
+                ?.let { Triple(liveModule, variant, it) }
+        }
+
+        null -> null
+    }
+}
+
 @Suppress("FunctionName")
 internal fun LocalQuickFixOnPsiElement(
     element: PsiElement,
@@ -0,0 +1,22 @@
+package com.jetbrains.packagesearch.plugin.services
+
+import com.intellij.openapi.fileEditor.FileEditorManager
+import com.intellij.openapi.fileEditor.FileEditorManagerListener
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.jetbrains.packagesearch.plugin.PackageSearchModuleBaseTransformerUtils
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchProjectService
+
+/**
+ * Activates [PackageSearchProjectService] when a build file, as told by the module providers, is
+ * opened in an editor, including the editors reopened with the project. Other files do not
+ * instantiate the service, neither here nor when they are inspected.
+ */
+class PackageSearchActivationListener(private val project: Project) : FileEditorManagerListener {
+
+    override fun fileOpened(source: FileEditorManager, file: VirtualFile) {
+        if (PackageSearchModuleBaseTransformerUtils.isBuildFile(file.name)) {
+            project.PackageSearchProjectService.activate()
+        }
+    }
+}
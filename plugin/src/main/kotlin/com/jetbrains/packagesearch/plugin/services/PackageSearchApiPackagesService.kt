@@ -0,0 +1,241 @@
+package com.jetbrains.packagesearch.plugin.services
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.intellij.openapi.application.appSystemDir
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.Service.Level
+import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.lowMemoryFlow
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiClientService
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiPackageCache
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchMemoryCache
+import com.jetbrains.packagesearch.plugin.utils.RequestBatcher
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.io.path.div
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.retry
+import kotlinx.coroutines.launch
+import org.jetbrains.packagesearch.api.v3.ApiMavenPackage
+import org.jetbrains.packagesearch.api.v3.ApiPackage
+import org.jetbrains.packagesearch.api.v3.http.RefreshPackagesInfoRequest
+import org.jetbrains.packagesearch.packageversionutils.normalization.NormalizedVersion
+
+/**
+ * Package metadata shared by all open projects: every package is fetched once and held in
+ * memory once, no matter how many projects declare it.
+ *
+ * Packages are handed out without their version history, only the latest and latest stable
+ * versions are kept, along with the versions declared by the modules asking for them, so that
+ * module snapshots do not retain thousands of versions per package. The full history is
+ * available page by page with [getVersionHistory]; it is only held by the weight-bounded
+ * package cache, which drops it under memory pressure or once no project is open.
+ *
+ * Projects register with [acquire]; when the last of them is closed, the in-memory entries
+ * are written to disk and released. The same happens when the IDE is low on memory, the
+ * entries are then loaded again from disk on the next request.
+ */
+@Service(Level.APP)
+class PackageSearchApiPackagesService(private val coroutineScope: CoroutineScope) {
+
+    private val client
+        get() = IntelliJApplication.PackageSearchApiClientService.client
+
+    private val apiPackageCache = PackageSearchApiPackageCache(
+        cacheFile = appSystemDir / "packagesearch" / "packages-cache.json",
+        coroutineScope = coroutineScope,
+    )
+
+    private val users = AtomicInteger()
+
+    /**
+     * Summaries are keyed by the identity of the canonical package they were made from, so the
+     * same summary instance is shared as long as the package itself does not change. A summary
+     * keeps the versions declared by every module it was asked for so far.
+     */
+    private val packageSummaries: Cache<ApiPackage, PackageSummary> = Caffeine.newBuilder()
+        .weakKeys()
+        .build()
+
+    /**
+     * Package ids are translated to id hashes, so that packages requested by id and by
+     * id hash share the same in-flight fetch. Retrieved packages are kept in [apiPackageCache]
+     * only, which decides when they are downloaded again.
+     */
+    private val packageRequests = RequestBatcher(coroutineScope, keyOf = ApiPackage::idHash, metricsName = "api.packages") {
+        PackageSearchLogger.logDebug("${this::class.qualifiedName}#packageRequests") { "request.size = ${it.size}" }
+        val packages = PackageSearchMetrics.measure("api.packages.call") { client.getPackageInfoByIdHashes(it) }
+        apiPackageCache.put(packages.values)
+    }
+
+    init {
+        lowMemoryFlow
+            .onEach {
+                release()
+                PackageSearchLogger.logInfo("${this::class.qualifiedName}#lowMemoryFlow") {
+                    PackageSearchMemoryCache.allStats().joinToString { it.toString() }
+                }
+            }
+            .retry(5) {
+                PackageSearchLogger.logWarn("${this::class.simpleName}#lowMemoryFlow", throwable = it)
+                true
+            }
+            .launchIn(coroutineScope)
+    }
+
+    /**
+     * Keeps the shared entries in memory until [userJob] completes.
+     */
+    fun acquire(userJob: Job) {
+        users.incrementAndGet()
+        userJob.invokeOnCompletion {
+            if (users.decrementAndGet() == 0) coroutineScope.launch { release() }
+        }
+    }
+
+    private suspend fun release() {
+        apiPackageCache.unload()
+        PackageSearchLogger.logDebug("${this::class.qualifiedName}#release") { "Released shared package metadata" }
+    }
+
+    suspend fun getPackageInfoByIds(packageIds: Set<String>): Map<String, ApiPackage> =
+        getPackageInfoByIdHashes(packageIds.mapTo(mutableSetOf()) { ApiPackage.hashPackageId(it) })
+
+    /**
+     * @param declaredVersionsByIdHash the names of the versions to keep in the versions of each
+     * package along with the latest ones, by package id hash.
+     */
+    suspend fun getPackageInfoByIdHashes(
+        packageIdHashes: Set<String>,
+        declaredVersionsByIdHash: Map<String, Set<String>> = emptyMap(),
+    ): Map<String, ApiPackage> =
+        getFullPackageInfoByIdHashes(packageIdHashes).mapValues { (_, apiPackage) ->
+            apiPackage.summary(declaredVersionsByIdHash[apiPackage.idHash].orEmpty())
+        }
+
+    /**
+     * Same as [getPackageInfoByIds], without fetching the packages missing from the cache.
+     */
+    suspend fun getCachedPackageInfoByIds(packageIds: Set<String>): Map<String, ApiPackage> =
+        apiPackageCache.getByIdHashes(packageIds.mapTo(mutableSetOf()) { ApiPackage.hashPackageId(it) })
+            .mapValues { (_, apiPackage) -> apiPackage.summary() }
+
+    /**
+     * Returns [limit] versions of the package with the given [packageId], starting from [offset],
+     * sorted from the most recent one.
+     */
+    suspend fun getVersionHistory(
+        packageId: String,
+        offset: Int,
+        limit: Int = VERSION_HISTORY_PAGE_SIZE,
+    ): VersionHistoryPage {
+        val versions = getFullPackageInfo(packageId)
+            ?.versions
+            ?.all
+            ?.map { it.normalizedVersion }
+            ?.sortedDescending()
+            ?: return VersionHistoryPage(emptyList(), hasMore = false)
+        return VersionHistoryPage(
+            versions = versions.drop(offset).take(limit),
+            hasMore = offset + limit < versions.size,
+        )
+    }
+
+    /**
+     * Returns the ids of the repositories publishing [versionName] of the package with the given [packageId].
+     */
+    suspend fun getVersionRepositoryIds(packageId: String, versionName: String): List<String> =
+        getFullPackageInfo(packageId)
+            ?.versions
+            ?.all
+            ?.firstOrNull { it.normalizedVersion.versionName == versionName }
+            ?.repositoryIds
+            ?.toList()
+            .orEmpty()
+
+    private suspend fun getFullPackageInfo(packageId: String): ApiPackage? =
+        getFullPackageInfoByIdHashes(setOf(ApiPackage.hashPackageId(packageId)))[packageId]
+
+    private fun ApiPackage.summary(declaredVersionNames: Set<String> = emptySet()): ApiPackage {
+        packageSummaries.getIfPresent(this)
+            ?.takeIf { it.keptVersionNames.containsAll(declaredVersionNames) }
+            ?.let { return it.apiPackage }
+        return packageSummaries.asMap().compute(this) { _, previous ->
+            previous?.takeIf { it.keptVersionNames.containsAll(declaredVersionNames) }
+                ?: withoutVersionHistory(previous?.keptVersionNames.orEmpty() + declaredVersionNames)
+        }!!.apiPackage
+    }
+
+    private suspend fun getFullPackageInfoByIdHashes(packageIdHashes: Set<String>): Map<String, ApiPackage> {
+        val cached = apiPackageCache.getByIdHashes(packageIdHashes)
+        val missing = packageIdHashes - cached.values.mapTo(mutableSetOf()) { it.idHash }
+        if (missing.isEmpty()) return cached
+        return cached + packageRequests.await(missing).values.associateBy { it.id }
+    }
+
+    /**
+     * Sends the latest version known for each of [knownPackages] to the API, which answers only with
+     * the packages that changed since, or that were not known yet. Changed packages are stored in the
+     * cache, unchanged ones are marked as fresh again.
+     *
+     * @param knownPackages a map of package id to the [ApiPackage] currently known for it, if any.
+     * @return the ids of the packages that changed.
+     */
+    suspend fun refreshPackages(knownPackages: Map<String, ApiPackage?>): Set<String> {
+        if (knownPackages.isEmpty()) return emptySet()
+        val changedPackages = knownPackages
+            .map { (packageId, apiPackage) ->
+                RefreshPackagesInfoRequest.Package(
+                    packageIdHash = ApiPackage.hashPackageId(packageId),
+                    latestKnownVersion = apiPackage?.versions?.latest?.normalized?.versionName,
+                )
+            }
+            .chunked(REFRESH_CHUNK_SIZE)
+            .flatMap { client.refreshPackagesInfo(RefreshPackagesInfoRequest(it)) }
+        val changedIds = changedPackages.mapTo(mutableSetOf()) { it.id }
+        apiPackageCache.put(changedPackages)
+        apiPackageCache.renew(
+            knownPackages.keys
+                .filter { it !in changedIds }
+                .mapTo(mutableSetOf()) { ApiPackage.hashPackageId(it) }
+        )
+        PackageSearchLogger.logDebug("${this::class.qualifiedName}#refreshPackages") {
+            "known.size = ${knownPackages.size}, changed.size = ${changedIds.size}"
+        }
+        return changedIds
+    }
+
+    companion object {
+        private const val REFRESH_CHUNK_SIZE = 500
+        const val VERSION_HISTORY_PAGE_SIZE = 50
+    }
+}
+
+data class VersionHistoryPage(
+    val versions: List<NormalizedVersion>,
+    val hasMore: Boolean,
+)
+
+private class PackageSummary(val keptVersionNames: Set<String>, val apiPackage: ApiPackage)
+
+/**
+ * Keeps only the latest and latest stable versions in [ApiPackage.versions], along with the ones
+ * named in [declaredVersionNames].
+ */
+private fun ApiPackage.withoutVersionHistory(declaredVersionNames: Set<String>): PackageSummary {
+    val keptVersionNames = declaredVersionNames + setOfNotNull(
+        versions.latest.normalized.versionName,
+        versions.latestStable?.normalized?.versionName,
+    )
+    val summary = when (this) {
+        is ApiMavenPackage -> copy(
+            versions = versions.copy(all = versions.all.filter { it.normalizedVersion.versionName in keptVersionNames })
+        )
+    }
+    return PackageSummary(keptVersionNames, summary)
+}
@@ -0,0 +1,341 @@
+@file:OptIn(ExperimentalSerializationApi::class)
+
+package com.jetbrains.packagesearch.plugin.services
+
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.text.StringUtil
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.jetbrains.packagesearch.plugin.core.data.EditModuleContext
+import com.jetbrains.packagesearch.plugin.core.data.IconProvider
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredPackage
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDeclaredRepository
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDependencyManager
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModuleEditor
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModuleVariant
+import com.jetbrains.packagesearch.plugin.core.data.declaredPackages
+import com.jetbrains.packagesearch.plugin.core.extensions.DependencyDeclarationIndexes
+import com.jetbrains.packagesearch.plugin.core.utils.SerializablePath
+import com.jetbrains.packagesearch.plugin.core.utils.packageSearchProjectDataPath
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.Base64
+import kotlin.io.path.createParentDirectories
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.moveTo
+import kotlin.io.path.readBytes
+import kotlin.io.path.readText
+import kotlin.io.path.writeBytes
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
+import kotlinx.serialization.decodeFromByteArray
+import kotlinx.serialization.encodeToByteArray
+import kotlinx.serialization.protobuf.ProtoBuf
+import org.jetbrains.packagesearch.api.v3.ApiPackage
+import org.jetbrains.packagesearch.api.v3.ApiPackageVersion
+import org.jetbrains.packagesearch.api.v3.ApiRepository
+import org.jetbrains.packagesearch.api.v3.search.PackagesType
+import org.jetbrains.packagesearch.packageversionutils.normalization.NormalizedVersion
+
+/**
+ * Persists the last modules computed for a project, so that they can be shown as soon as the
+ * project is opened, while the live modules are still being resolved.
+ *
+ * Modules are stored in ProtoBuf without their remote info, which is restored from the
+ * shared package cache when loading. The declaration indexes of a module are only restored if
+ * its build file has not changed since the snapshot was saved.
+ */
+internal class PackageSearchModulesSnapshotStore(project: Project) {
+
+    private val snapshotFile = project.packageSearchProjectDataPath / "modules-snapshot.bin"
+    private val fileMutex = Mutex()
+
+    suspend fun load(): List<PackageSearchModule> = withContext(Dispatchers.IO) {
+        fileMutex.withLock {
+            if (!snapshotFile.exists()) return@withLock emptyList()
+            runCatching { ProtoBuf.decodeFromByteArray<PackageSearchModulesSnapshot>(snapshotFile.readBytes()) }
+                .onFailure {
+                    PackageSearchLogger.logWarn("${PackageSearchModulesSnapshotStore::class.simpleName}#load", throwable = it)
+                    snapshotFile.deleteIfExists()
+                }
+                .getOrNull()
+                ?.takeIf { it.formatVersion == PackageSearchModulesSnapshot.FORMAT_VERSION }
+                ?.let { snapshot ->
+                    snapshot.baseModules.map { it.withValidIndexes() } +
+                        snapshot.modulesWithVariants.map { it.withValidIndexes() }
+                }
+                .orEmpty()
+        }
+    }
+
+    suspend fun save(modules: Collection<PackageSearchModule>) = withContext(Dispatchers.IO) {
+        val snapshot = PackageSearchModulesSnapshot(
+            formatVersion = PackageSearchModulesSnapshot.FORMAT_VERSION,
+            baseModules = modules.filterIsInstance<PackageSearchModule.Base>().map { it.toSnapshot() },
+            modulesWithVariants = modules.filterIsInstance<PackageSearchModule.WithVariants>().map { it.toSnapshot() },
+        )
+        fileMutex.withLock {
+            val tmpFile = snapshotFile.resolveSibling("${snapshotFile.fileName}.tmp")
+            tmpFile.createParentDirectories()
+            tmpFile.writeBytes(ProtoBuf.encodeToByteArray(snapshot))
+            tmpFile.moveTo(snapshotFile, overwrite = true)
+        }
+    }
+}
+
+/**
+ * Adds the remote info found in [remoteInfo], keyed by package id, to the declared packages of
+ * the modules restored from a snapshot.
+ */
+internal fun PackageSearchModule.withRemoteInfo(remoteInfo: Map<String, ApiPackage>): PackageSearchModule =
+    when (this) {
+        is SnapshotModule -> copy(declaredDependencies = declaredDependencies.map { it.copy(remoteInfo = remoteInfo[it.id]) })
+        is SnapshotModuleWithVariants -> copy(
+            variants = variants.mapValues { (_, variant) ->
+                variant.copy(declaredDependencies = variant.declaredDependencies.map { it.copy(remoteInfo = remoteInfo[it.id]) })
+            }
+        )
+        else -> this
+    }
+
+internal val PackageSearchModule.isSnapshot
+    get() = this is SnapshotModule || this is SnapshotModuleWithVariants
+
+internal val Collection<PackageSearchModule>.declaredPackageIds
+    get() = flatMapTo(mutableSetOf()) { module -> module.declaredPackages.map { it.id } }
+
+@Serializable
+private data class PackageSearchModulesSnapshot(
+    val formatVersion: Int,
+    val baseModules: List<SnapshotModule>,
+    val modulesWithVariants: List<SnapshotModuleWithVariants>,
+) {
+    companion object {
+        const val FORMAT_VERSION = 1
+    }
+}
+
+/**
+ * Modules restored from a snapshot cannot be edited, edits are applied to the live module
+ * with the same identity once it is available.
+ */
+private interface SnapshotModuleEditor : PackageSearchModuleEditor, SnapshotDependencyManager {
+
+    override suspend fun editModule(action: EditModuleContext.() -> Unit) = readOnly()
+
+    override fun addRepository(context: EditModuleContext, repository: ApiRepository) = readOnly()
+
+    override fun removeRepository(context: EditModuleContext, repository: PackageSearchDeclaredRepository) = readOnly()
+}
+
+private interface SnapshotDependencyManager : PackageSearchDependencyManager {
+
+    override fun updateDependency(
+        context: EditModuleContext,
+        declaredPackage: PackageSearchDeclaredPackage,
+        newVersion: String?,
+        newScope: String?,
+    ) = readOnly()
+
+    override fun addDependency(
+        context: EditModuleContext,
+        apiPackage: ApiPackage,
+        selectedVersion: String,
+        selectedScope: String?,
+    ) = readOnly()
+
+    override fun removeDependency(context: EditModuleContext, declaredPackage: PackageSearchDeclaredPackage) =
+        readOnly()
+}
+
+private fun readOnly(): Nothing = error("Modules restored from a snapshot cannot be edited")
+
+@Serializable
+private data class SnapshotModule(
+    override val name: String,
+    override val identity: PackageSearchModule.Identity,
+    override val buildFilePath: SerializablePath?,
+    override val declaredRepositories: List<SnapshotDeclaredRepository>,
+    override val declaredDependencies: List<SnapshotDeclaredPackage>,
+    override val availableScopes: List<String>,
+    override val defaultScope: String?,
+    override val compatiblePackageTypes: List<PackagesType>,
+    override val dependencyMustHaveAScope: Boolean,
+    override val icon: IconProvider.Icon,
+    val buildFileHash: String? = null,
+) : PackageSearchModule.Base, SnapshotModuleEditor {
+
+    fun withValidIndexes() = when {
+        buildFileHash != null && buildFileHash == buildFilePath?.contentHash() -> this
+        else -> copy(
+            declaredDependencies = declaredDependencies
+                .map { it.copy(declarationIndexes = DependencyDeclarationIndexes.UNKNOWN) }
+        )
+    }
+}
+
+@Serializable
+private data class SnapshotModuleWithVariants(
+    override val name: String,
+    override val identity: PackageSearchModule.Identity,
+    override val buildFilePath: SerializablePath?,
+    override val declaredRepositories: List<SnapshotDeclaredRepository>,
+    override val variants: Map<String, SnapshotModuleVariant>,
+    override val variantTerminology: PackageSearchModule.WithVariants.Terminology,
+    override val mainVariantName: String,
+    override val compatiblePackageTypes: List<PackagesType>,
+    override val dependencyMustHaveAScope: Boolean,
+    override val icon: IconProvider.Icon,
+    val buildFileHash: String? = null,
+) : PackageSearchModule.WithVariants, SnapshotModuleEditor {
+
+    fun withValidIndexes() = when {
+        buildFileHash != null && buildFileHash == buildFilePath?.contentHash() -> this
+        else -> copy(
+            variants = variants.mapValues { (_, variant) ->
+                variant.copy(
+                    declaredDependencies = variant.declaredDependencies
+                        .map { it.copy(declarationIndexes = DependencyDeclarationIndexes.UNKNOWN) }
+                )
+            }
+        )
+    }
+}
+
+@Serializable
+private data class SnapshotModuleVariant(
+    override val name: String,
+    override val variantTerminology: PackageSearchModule.WithVariants.Terminology?,
+    override val declaredDependencies: List<SnapshotVariantDeclaredPackage>,
+    override val attributes: List<PackageSearchModuleVariant.Attribute>,
+    override val compatiblePackageTypes: List<PackagesType>,
+    override val isPrimary: Boolean,
+    override val dependencyMustHaveAScope: Boolean,
+    override val availableScopes: List<String>,
+    override val defaultScope: String?,
+) : PackageSearchModuleVariant, SnapshotDependencyManager {
+
+    override fun isCompatible(dependency: ApiPackage, version: ApiPackageVersion) = true
+}
+
+@Serializable
+private data class SnapshotDeclaredRepository(
+    override val url: String,
+    override val name: String?,
+) : PackageSearchDeclaredRepository {
+
+    override val remoteInfo: ApiRepository?
+        get() = null
+}
+
+@Serializable
+private data class SnapshotDeclaredPackage(
+    override val id: String,
+    override val displayName: String,
+    override val coordinates: String,
+    override val declaredVersion: NormalizedVersion?,
+    override val declarationIndexes: DependencyDeclarationIndexes,
+    override val declaredScope: String?,
+    override val icon: IconProvider.Icon,
+    @Transient override val remoteInfo: ApiPackage? = null,
+) : PackageSearchDeclaredPackage
+
+@Serializable
+private data class SnapshotVariantDeclaredPackage(
+    override val id: String,
+    override val displayName: String,
+    override val coordinates: String,
+    override val declaredVersion: NormalizedVersion?,
+    override val declarationIndexes: DependencyDeclarationIndexes,
+    override val declaredScope: String?,
+    override val icon: IconProvider.Icon,
+    override val variantName: String,
+    @Transient override val remoteInfo: ApiPackage? = null,
+) : PackageSearchDeclaredPackage.WithVariant
+
+private fun PackageSearchModule.Base.toSnapshot() = SnapshotModule(
+    name = name,
+    identity = identity,
+    buildFilePath = buildFilePath,
+    declaredRepositories = declaredRepositories.map { it.toSnapshot() },
+    declaredDependencies = declaredDependencies.map {
+        SnapshotDeclaredPackage(
+            id = it.id,
+            displayName = it.displayName,
+            coordinates = it.coordinates,
+            declaredVersion = it.declaredVersion,
+            declarationIndexes = it.declarationIndexes,
+            declaredScope = it.declaredScope,
+            icon = it.icon,
+        )
+    },
+    availableScopes = availableScopes,
+    defaultScope = defaultScope,
+    compatiblePackageTypes = compatiblePackageTypes,
+    dependencyMustHaveAScope = dependencyMustHaveAScope,
+    icon = icon,
+    buildFileHash = buildFilePath?.contentHash(),
+)
+
+private fun PackageSearchModule.WithVariants.toSnapshot() = SnapshotModuleWithVariants(
+    name = name,
+    identity = identity,
+    buildFilePath = buildFilePath,
+    declaredRepositories = declaredRepositories.map { it.toSnapshot() },
+    variants = variants.mapValues { (_, variant) ->
+        SnapshotModuleVariant(
+            name = variant.name,
+            variantTerminology = variant.variantTerminology,
+            declaredDependencies = variant.declaredDependencies.map {
+                SnapshotVariantDeclaredPackage(
+                    id = it.id,
+                    displayName = it.displayName,
+                    coordinates = it.coordinates,
+                    declaredVersion = it.declaredVersion,
+                    declarationIndexes = it.declarationIndexes,
+                    declaredScope = it.declaredScope,
+                    icon = it.icon,
+                    variantName = it.variantName,
+                )
+            },
+            attributes = variant.attributes,
+            compatiblePackageTypes = variant.compatiblePackageTypes,
+            isPrimary = variant.isPrimary,
+            dependencyMustHaveAScope = variant.dependencyMustHaveAScope,
+            availableScopes = variant.availableScopes,
+            defaultScope = variant.defaultScope,
+        )
+    },
+    variantTerminology = variantTerminology,
+    mainVariantName = mainVariantName,
+    compatiblePackageTypes = compatiblePackageTypes,
+    dependencyMustHaveAScope = dependencyMustHaveAScope,
+    icon = icon,
+    buildFileHash = buildFilePath?.contentHash(),
+)
+
+private fun PackageSearchDeclaredRepository.toSnapshot() = SnapshotDeclaredRepository(url = url, name = name)
+
+/**
+ * Hash of the text of this build file as the IDE sees it, from its document if loaded and from
+ * disk otherwise, with line separators normalized as in documents.
+ */
+private fun Path.contentHash(): String? {
+    val text = LocalFileSystem.getInstance().findFileByNioFile(this)
+        ?.let { FileDocumentManager.getInstance().getCachedDocument(it) }
+        ?.immutableCharSequence
+        ?: runCatching { readText() }.getOrNull()
+        ?: return null
+    val digest = MessageDigest.getInstance("SHA-256")
+        .digest(StringUtil.convertLineSeparators(text.toString()).encodeToByteArray())
+    return Base64.getEncoder().encodeToString(digest)
+}
@@ -0,0 +1,92 @@
+package com.jetbrains.packagesearch.plugin.services
+
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
+import java.nio.file.Path
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+
+/**
+ * The modules of a project, keyed by [PackageSearchModule.Identity], together with the
+ * [delta] that produced them from the previous state. A state [isStale] while its modules
+ * come from the snapshot persisted for the project, until the live modules replace them.
+ *
+ * Each new state is derived from the previous one by looking only at the modules whose
+ * instance changed, so unchanged modules are neither compared nor re-indexed. States are
+ * compared by identity for the same reason.
+ */
+class PackageSearchModulesState(
+    val modulesByIdentity: Map<PackageSearchModule.Identity, PackageSearchModule> = emptyMap(),
+    val modulesByBuildFile: Map<Path, PackageSearchModule> = emptyMap(),
+    val delta: PackageSearchModulesDelta = PackageSearchModulesDelta(),
+    val version: Long = 0,
+    val isStale: Boolean = false,
+) {
+
+    val modules: Collection<PackageSearchModule>
+        get() = modulesByIdentity.values
+
+    /**
+     * Returns the state holding exactly [modules], or this state if none of them changed.
+     */
+    fun next(modules: List<PackageSearchModule>, isStale: Boolean = false): PackageSearchModulesState {
+        val newModulesByIdentity = modules.associateBy { it.identity }
+        val delta = PackageSearchModulesDelta(
+            added = newModulesByIdentity.filterKeys { it !in modulesByIdentity },
+            updated = newModulesByIdentity.filter { (identity, module) ->
+                val current = modulesByIdentity[identity]
+                current != null && current !== module && current != module
+            },
+            removed = modulesByIdentity.keys - newModulesByIdentity.keys,
+        )
+        return apply(delta, isStale)
+    }
+
+    fun apply(delta: PackageSearchModulesDelta, isStale: Boolean = false): PackageSearchModulesState {
+        if (delta.isEmpty() && isStale == this.isStale) return this
+        val removedModules = delta.removed.mapNotNull { modulesByIdentity[it] } +
+                delta.updated.keys.mapNotNull { modulesByIdentity[it] }
+        val upserted = delta.added.values + delta.updated.values
+        return PackageSearchModulesState(
+            modulesByIdentity = modulesByIdentity - delta.removed + delta.added + delta.updated,
+            modulesByBuildFile = modulesByBuildFile -
+                    removedModules.mapNotNullTo(mutableSetOf()) { it.buildFilePath } +
+                    upserted.mapNotNull { module -> module.buildFilePath?.let { it to module } },
+            delta = delta,
+            version = version + 1,
+            isStale = isStale,
+        )
+    }
+
+    /**
+     * The delta leading from this state to [other], which does not need to be the next one.
+     */
+    fun diff(other: PackageSearchModulesState): PackageSearchModulesDelta = when (other.version) {
+        version -> PackageSearchModulesDelta()
+        version + 1 -> other.delta
+        else -> next(other.modules.toList()).delta
+    }
+}
+
+/**
+ * Modules [added], [updated] or [removed] from a [PackageSearchModulesState].
+ */
+data class PackageSearchModulesDelta(
+    val added: Map<PackageSearchModule.Identity, PackageSearchModule> = emptyMap(),
+    val updated: Map<PackageSearchModule.Identity, PackageSearchModule> = emptyMap(),
+    val removed: Set<PackageSearchModule.Identity> = emptySet(),
+) {
+    fun isEmpty() = added.isEmpty() && updated.isEmpty() && removed.isEmpty()
+}
+
+/**
+ * Emits the delta between each state and the previous one collected, starting with every
+ * module as added. Intermediate states skipped by a slow collector are merged into one delta.
+ */
+fun Flow<PackageSearchModulesState>.deltas(): Flow<PackageSearchModulesDelta> = flow {
+    var previous = PackageSearchModulesState()
+    collect { state ->
+        val delta = previous.diff(state)
+        previous = state
+        if (!delta.isEmpty()) emit(delta)
+    }
+}
@@ -6,46 +6,71 @@ import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer
 import com.intellij.openapi.application.readAction
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.components.Service.Level
+import com.intellij.openapi.fileEditor.FileEditorManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.toNioPathOrNull
 import com.intellij.psi.PsiManager
 import com.jetbrains.packagesearch.plugin.PackageSearchModuleBaseTransformerUtils
+import com.jetbrains.packagesearch.plugin.core.data.declaredPackages
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchKnownRepositoriesContext
+import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleProvider
 import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchDispatcher
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.clearCachedDeclarations
 import com.jetbrains.packagesearch.plugin.core.utils.fileOpenedFlow
+import com.jetbrains.packagesearch.plugin.core.utils.mapUnit
 import com.jetbrains.packagesearch.plugin.core.utils.replayOn
 import com.jetbrains.packagesearch.plugin.core.utils.toolWindowOpenedFlow
+import com.jetbrains.packagesearch.plugin.ui.model.packageslist.suspendSafe
+import com.jetbrains.packagesearch.plugin.utils.ModuleResolutionScheduler
+import com.jetbrains.packagesearch.plugin.utils.NativeModule
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiClientService
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiPackagesService
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchSettingsService
 import com.jetbrains.packagesearch.plugin.utils.WindowedModuleBuilderContext
 import com.jetbrains.packagesearch.plugin.utils.drop
-import com.jetbrains.packagesearch.plugin.utils.filterNotNullKeys
 import com.jetbrains.packagesearch.plugin.utils.nativeModulesFlow
 import com.jetbrains.packagesearch.plugin.utils.startWithNull
-import com.jetbrains.packagesearch.plugin.utils.throttle
 import com.jetbrains.packagesearch.plugin.utils.timer
+import java.util.concurrent.atomic.AtomicReference
 import kotlin.time.Duration.Companion.hours
 import kotlin.time.Duration.Companion.minutes
 import kotlin.time.Duration.Companion.seconds
+import kotlin.time.TimeSource
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.collect
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.consumeAsFlow
 import kotlinx.coroutines.flow.debounce
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.emptyFlow
 import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flatMapMerge
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.launchIn
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.onStart
 import kotlinx.coroutines.flow.retry
+import kotlinx.coroutines.flow.scan
 import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import org.jetbrains.packagesearch.api.v3.ApiPackage
 import org.jetbrains.packagesearch.api.v3.ApiRepository
 
 @Service(Level.PROJECT)
@@ -54,9 +79,31 @@ class PackageSearchProjectService(
     override val coroutineScope: CoroutineScope,
 ) : PackageSearchKnownRepositoriesContext {
 
+    private val isActive = MutableStateFlow(false)
+
+    /**
+     * Wakes the service up. Until then it stays dormant: no module is resolved and nothing is
+     * requested to the server. It is activated when the tool window opens, when a build file is
+     * opened in an editor, see [PackageSearchActivationListener], or when an inspection needs modules.
+     */
+    fun activate() {
+        if (!isActive.value) PackageSearchLogger.logDebug("${this::class.qualifiedName}#activate") { "Activated" }
+        isActive.value = true
+    }
+
+    private suspend fun awaitActivation() {
+        isActive.first { it }
+    }
+
+    private fun Flow<*>.launchWhenActive() = coroutineScope.launch {
+        awaitActivation()
+        collect()
+    }
+
     private val restartChannel = Channel<Unit>()
 
     fun restart() {
+        project.clearCachedDeclarations()
         restartChannel.trySend(Unit)
     }
 
@@ -65,13 +112,20 @@ class PackageSearchProjectService(
         .flatMapLatest { combine(it) { it.all { it } } }
         .stateIn(coroutineScope, SharingStarted.Lazily, false)
 
-    private val knownRepositoriesStateFlow = timer(12.hours) {
-        IntelliJApplication.PackageSearchApiClientService
-            .client
-            .getKnownRepositories()
-            .associateBy { it.id }
+    private val knownRepositoriesStateFlow = flow {
+        awaitActivation()
+        val knownRepositories = timer(12.hours) {
+            PackageSearchMetrics.measure("api.knownRepositories.call") {
+                IntelliJApplication.PackageSearchApiClientService
+                    .client
+                    .getKnownRepositories()
+                    .associateBy { it.id }
+            }
+        }
+        emitAll(knownRepositories)
     }
         .retry(5) {
+            PackageSearchMetrics.increment("retries.knownRepositories")
             PackageSearchLogger.logDebug(
                 contextName = "${this::class.simpleName}#knownRepositoriesStateFlow",
                 throwable = it
@@ -83,10 +137,14 @@ class PackageSearchProjectService(
     override val knownRepositories: Map<String, ApiRepository>
         get() = knownRepositoriesStateFlow.value
 
+    val resolutionScheduler = ModuleResolutionScheduler(maxConcurrency = MAX_CONCURRENT_MODULE_RESOLUTIONS)
+
     private val context = WindowedModuleBuilderContext(
         project = project,
         knownRepositoriesGetter = { knownRepositories },
-        packageSearchApiClient = IntelliJApplication.PackageSearchApiClientService.client,
+        apiPackagesService = IntelliJApplication.PackageSearchApiPackagesService
+            .also { it.acquire(coroutineScope.coroutineContext.job) },
+        resolutionScheduler = resolutionScheduler,
         coroutineScope = coroutineScope,
     )
 
@@ -97,36 +155,133 @@ class PackageSearchProjectService(
         ) { nativeModules, transformerExtensions ->
             transformerExtensions.flatMap { transformer ->
                 nativeModules.map { module ->
-                    with(context) {
-                        transformer.provideModule(context, module).startWithNull()
-                    }
+                    transformer.provideRefreshableModule(module).startWithNull()
                 }
             }
         }
             .flatMapLatest { combine(it) { it.filterNotNull() } }
             .drop(1) { it.isEmpty() }
             .debounce(1.seconds)
-            .distinctUntilChanged()
+
+    private val refreshedPackageIdsFlow = MutableSharedFlow<Set<String>>()
+
+    /**
+     * Rebuilds the module only when one of the packages it declares has been changed by [refreshPackages].
+     *
+     * Modules are built on [PackageSearchDispatcher], so that only a bounded number of them
+     * run their read actions at the same time.
+     */
+    private fun PackageSearchModuleProvider.provideRefreshableModule(nativeModule: NativeModule) = flow {
+        val declaredPackageIds = AtomicReference(emptySet<String>())
+        val restarts = refreshedPackageIdsFlow
+            .filter { changedIds -> declaredPackageIds.get().any { it in changedIds } }
+            .mapUnit()
+            .onStart { emit(Unit) }
+        val modules = restarts
+            .flatMapLatest { provideModule(context, nativeModule).flowOn(PackageSearchDispatcher) }
+            .onEach { module ->
+                if (module != null) PackageSearchMetrics.increment("modules.processed")
+                declaredPackageIds.set(module?.declaredPackages?.mapTo(mutableSetOf()) { it.id }.orEmpty())
+            }
+        emitAll(modules)
+    }
+
+    /**
+     * When packages were last refreshed. Modules are resolved with fresh packages, so the
+     * creation of the service counts as a refresh.
+     */
+    private val lastPackagesRefresh = AtomicReference(TimeSource.Monotonic.markNow())
+
+    /**
+     * Refreshes only the packages whose latest version changed since they were retrieved,
+     * then rebuilds only the modules declaring them.
+     */
+    private suspend fun refreshPackages() {
+        lastPackagesRefresh.set(TimeSource.Monotonic.markNow())
+        val knownPackages = buildMap<String, ApiPackage?> {
+            modulesState.value.modules
+                .flatMap { it.declaredPackages }
+                .forEach { if (get(it.id) == null) put(it.id, it.remoteInfo) }
+        }
+        val changedIds = context.refreshPackages(knownPackages)
+        if (changedIds.isNotEmpty()) refreshedPackageIdsFlow.emit(changedIds)
+    }
 
     private val restartFlow = restartChannel.consumeAsFlow()
         .shareIn(coroutineScope, SharingStarted.Lazily, 0)
 
-    val modulesStateFlow = restartFlow
-        .onStart { emit(Unit) }
-        .flatMapLatest { moduleProvidersList }
-        .retry(5) {
-            PackageSearchLogger.logWarn("${this::class.simpleName}#modulesStateFlow", throwable = it)
-            true
+    private val snapshotStore = PackageSearchModulesSnapshotStore(project)
+
+    private val snapshotToSave = MutableStateFlow<PackageSearchModulesState?>(null)
+
+    /**
+     * Restores the modules persisted when the project was last open, with the remote info
+     * already in the package cache.
+     */
+    private suspend fun restoreSnapshot(): PackageSearchModulesState {
+        val modules = runCatching { snapshotStore.load() }
+            .suspendSafe()
+            .onFailure { PackageSearchLogger.logWarn("${this::class.simpleName}#restoreSnapshot", throwable = it) }
+            .getOrDefault(emptyList())
+        if (modules.isEmpty()) return PackageSearchModulesState()
+        val remoteInfo = context.getCachedPackageInfoByIds(modules.declaredPackageIds)
+        PackageSearchLogger.logDebug("${this::class.qualifiedName}#restoreSnapshot") { "modules.size = ${modules.size}" }
+        return PackageSearchModulesState().next(modules.map { it.withRemoteInfo(remoteInfo) }, isStale = true)
+    }
+
+    /**
+     * The modules of the project, keyed by identity. Consumers able to apply changes
+     * incrementally should collect [modulesDeltaFlow] instead.
+     *
+     * Nothing is resolved until the service is [activated][activate]. Then, until the live
+     * modules are resolved, the state holds the modules restored from the
+     * snapshot of the previous session and is marked as stale.
+     */
+    val modulesState = flow {
+        awaitActivation()
+        val restoredState = restoreSnapshot()
+        val liveModules = restartFlow
+            .onStart { emit(Unit) }
+            .flatMapLatest { moduleProvidersList }
+            .retry(5) {
+                PackageSearchMetrics.increment("retries.modulesState")
+                PackageSearchLogger.logWarn("${this::class.simpleName}#modulesState", throwable = it)
+                true
+            }
+        emitAll(liveModules.scan(restoredState) { state, modules -> state.next(modules) })
+    }
+        .onEach { if (!it.isStale && it.version > 0) snapshotToSave.value = it }
+        .onEach {
+            PackageSearchLogger.logDebug("${this::class.qualifiedName}#modulesState") {
+                "modules.size = ${it.modulesByIdentity.size}, " +
+                        "added = ${it.delta.added.size}, updated = ${it.delta.updated.size}, removed = ${it.delta.removed.size}"
+            }
         }
-        .onEach { PackageSearchLogger.logDebug("${this::class.qualifiedName}#modulesStateFlow") { "modules.size = ${it.size}" } }
+        .stateIn(coroutineScope, SharingStarted.Lazily, PackageSearchModulesState())
+
+    /**
+     * The modules added, updated or removed since the previous state collected, starting with
+     * every module as added, see [deltas].
+     */
+    val modulesDeltaFlow
+        get() = modulesState.deltas()
+
+    /**
+     * Waits for the live modules to replace the ones restored from the snapshot, which cannot be edited.
+     */
+    suspend fun awaitLiveModulesByIdentity() =
+        modulesState.first { !it.isStale }.modulesByIdentity
+
+    val modulesStateFlow = modulesState
+        .map { it.modules.toList() }
         .stateIn(coroutineScope, SharingStarted.Lazily, emptyList())
 
-    val modulesByBuildFile = modulesStateFlow
-        .map { it.associateBy { it.buildFilePath }.filterNotNullKeys() }
+    val modulesByBuildFile = modulesState
+        .map { it.modulesByBuildFile }
         .stateIn(coroutineScope, SharingStarted.Lazily, emptyMap())
 
-    val modulesByIdentity = modulesStateFlow
-        .map { it.associateBy { it.identity } }
+    val modulesByIdentity = modulesState
+        .map { it.modulesByIdentity }
         .stateIn(coroutineScope, SharingStarted.Lazily, emptyMap())
 
     private val openedBuildFiles = combine(
@@ -139,21 +294,70 @@ class PackageSearchProjectService(
 
     init {
 
+        project.fileOpenedFlow
+            .onEach { openedFiles ->
+                resolutionScheduler.openedBuildFileDirectories.value = openedFiles
+                    .filter {
+                        PackageSearchModuleBaseTransformerUtils.isBuildFile(it.name) ||
+                            it.toNioPathOrNull() in modulesByBuildFile.value
+                    }
+                    .mapNotNullTo(mutableSetOf()) { it.toNioPathOrNull()?.parent }
+            }
+            .retry(5) {
+                PackageSearchLogger.logWarn("${this::class.simpleName}#openedBuildFileDirectories", throwable = it)
+                true
+            }
+            .launchWhenActive()
+
+        snapshotToSave
+            .filterNotNull()
+            .debounce(10.seconds)
+            .onEach { snapshotStore.save(it.modules) }
+            .retry(5) {
+                PackageSearchLogger.logWarn("${this::class.simpleName}#snapshotToSave", throwable = it)
+                true
+            }
+            .launchIn(coroutineScope)
+
         combine(
             openedBuildFiles.map { it.isEmpty() },
             project.toolWindowOpenedFlow("Package Search"),
             IntelliJApplication.PackageSearchApiClientService.client.onlineStateFlow
         ) { noOpenedFiles, toolWindowOpened, isOnline -> noOpenedFiles || !toolWindowOpened || isOnline }
             .distinctUntilChanged()
-            .filter { it }
-            .throttle(30.minutes)
-            .onEach { restart() }
+            .flatMapLatest { shouldRefresh ->
+                when {
+                    // the first refresh waits for the period to elapse since the last one
+                    shouldRefresh -> timer(
+                        interval = PACKAGES_REFRESH_INTERVAL,
+                        initialDelay = PACKAGES_REFRESH_INTERVAL - lastPackagesRefresh.get().elapsedNow(),
+                    ) { refreshPackages() }
+                    else -> emptyFlow()
+                }
+            }
             .retry(5) {
                 PackageSearchLogger.logWarn("${this::class.simpleName}#isOnlineFlow", throwable = it)
                 true
             }
-            .launchIn(coroutineScope)
+            .launchWhenActive()
 
+        // inspections of the opened build files run again once their modules change
+        modulesDeltaFlow
+            .map { delta -> (delta.added.values + delta.updated.values).mapNotNullTo(mutableSetOf()) { it.buildFilePath } }
+            .filter { it.isNotEmpty() }
+            .onEach { changedBuildFiles ->
+                readAction {
+                    FileEditorManager.getInstance(project).openFiles
+                        .filter { it.toNioPathOrNull() in changedBuildFiles }
+                        .mapNotNull { PsiManager.getInstance(project).findFile(it) }
+                        .forEach { DaemonCodeAnalyzer.getInstance(project).restart(it) }
+                }
+            }
+            .retry(5) {
+                PackageSearchLogger.logWarn("${this::class.simpleName}#modulesDeltaFlow", throwable = it)
+                true
+            }
+            .launchWhenActive()
 
         openedBuildFiles
             .filter { it.isNotEmpty() }
@@ -171,8 +375,11 @@ class PackageSearchProjectService(
                 PackageSearchLogger.logWarn("${this::class.simpleName}#fileOpenedFlow", throwable = it)
                 true
             }
-            .launchIn(coroutineScope)
+            .launchWhenActive()
     }
 
+    companion object {
+        private const val MAX_CONCURRENT_MODULE_RESOLUTIONS = 4
+        private val PACKAGES_REFRESH_INTERVAL = 30.minutes
+    }
 }
-
@@ -0,0 +1,31 @@
+package com.jetbrains.packagesearch.plugin.tests.dumps
+
+import com.intellij.openapi.ui.playback.PlaybackContext
+import com.jetbrains.packagesearch.plugin.tests.CoroutineAbstractCommand
+import com.jetbrains.packagesearch.plugin.tests.PKGS_TEST_DATA_OUTPUT_DIR
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchDiagnostics
+import com.jetbrains.performancePlugin.CreateCommand
+import kotlin.io.path.writeText
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+/**
+ * Dumps the [PackageSearchDiagnostics] collected so far, usually right after
+ * [DumpPackageSearchModules], so that CI can track how long each stage of the pipeline took.
+ */
+internal class DumpPackageSearchMetrics(text: String, line: Int) : CoroutineAbstractCommand(text, line) {
+    companion object {
+        const val DUMP_NAME = "dumpPackageSearchMetrics"
+        const val PREFIX = CMD_PREFIX + DUMP_NAME
+        val COMMAND
+            get() = PREFIX to CreateCommand(::DumpPackageSearchMetrics)
+        const val DUMP_FILE_NAME = "metrics.json"
+    }
+
+    override suspend fun executeAsync(context: PlaybackContext) {
+        val json = PackageSearchDiagnostics.collect().toJson()
+        withContext(Dispatchers.IO) {
+            PKGS_TEST_DATA_OUTPUT_DIR.resolve(DUMP_FILE_NAME).writeText(json)
+        }
+    }
+}
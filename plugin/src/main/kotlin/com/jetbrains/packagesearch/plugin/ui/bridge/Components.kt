@@ -1,4 +1,4 @@
-@file:OptIn(ExperimentalFoundationApi::class)
+@file:OptIn(ExperimentalFoundationApi::class, ExperimentalComposeUiApi::class)
 
 package com.jetbrains.packagesearch.plugin.ui.bridge
 
@@ -14,8 +14,12 @@ import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.remember
 import androidx.compose.ui.Alignment
+import androidx.compose.ui.ExperimentalComposeUiApi
 import androidx.compose.ui.Modifier
+import androidx.compose.ui.input.pointer.PointerEventPass
+import androidx.compose.ui.input.pointer.PointerEventType
 import androidx.compose.ui.input.pointer.PointerIcon
+import androidx.compose.ui.input.pointer.onPointerEvent
 import androidx.compose.ui.input.pointer.pointerHoverIcon
 import androidx.compose.ui.layout.Layout
 import androidx.compose.ui.layout.Placeable
@@ -93,10 +97,14 @@ fun PackageSearchDropdownLink(
     items: List<String>,
     content: String,
     enabled: Boolean,
+    onMenuRequested: () -> Unit = {},
     onSelection: (String) -> Unit,
 ) {
     DropdownLink(
-        modifier = modifier,
+        // observes the press that opens the menu without consuming it
+        modifier = modifier.onPointerEvent(PointerEventType.Press, PointerEventPass.Initial) {
+            if (enabled) onMenuRequested()
+        },
         menuModifier = menuModifier.heightIn(max = PackageSearchMetrics.Dropdown.maxHeight),
         enabled = enabled && items.isNotEmpty(),
         style = LocalPackageSearchDropdownLinkStyle.current,
@@ -52,6 +52,7 @@ sealed interface InfoPanelContent {
             val latestVersion: String?
             val declaredVersion: String
             val availableVersions: List<String>
+            val hasMoreVersions: Boolean
             val declaredScope: String
             val availableScopes: List<String>
 
@@ -73,6 +74,7 @@ sealed interface InfoPanelContent {
                 override val latestVersion: String?,
                 override val declaredVersion: String,
                 override val availableVersions: List<String>,
+                override val hasMoreVersions: Boolean,
                 override val declaredScope: String,
                 override val availableScopes: List<String>,
                 override val allowMissingScope: Boolean
@@ -96,6 +98,7 @@ sealed interface InfoPanelContent {
                 override val latestVersion: String?,
                 override val declaredVersion: String,
                 override val availableVersions: List<String>,
+                override val hasMoreVersions: Boolean,
                 override val declaredScope: String,
                 override val availableScopes: List<String>,
                 override val allowMissingScope: Boolean,
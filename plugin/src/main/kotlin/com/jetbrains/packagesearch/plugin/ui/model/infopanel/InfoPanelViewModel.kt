@@ -26,35 +26,45 @@ import kotlinx.coroutines.flow.mapNotNull
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.retry
 import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.launch
 import org.jetbrains.packagesearch.api.v3.ApiPackage
 
 @Service(Level.PROJECT)
 class InfoPanelViewModel(
     private val project: Project,
-    viewModelScope: CoroutineScope,
+    private val viewModelScope: CoroutineScope,
 ) {
 
     private val setDataEventChannel = Channel<InfoPanelContentEvent>()
 
     val scrollState = ScrollState(0)
 
-    private val packageLoadingState
-        get() = project.service<PackageListViewModel>().packagesLoadingStateFlow
+    private val packageListViewModel
+        get() = project.service<PackageListViewModel>()
 
     val tabs: StateFlow<List<InfoPanelContent>> = combine(
         setDataEventChannel.consumeAsFlow(),
         project.PackageSearchSettingsService.stableOnlyFlow,
-        packageLoadingState
-    ) { event, onlyStable, packageLoadingState ->
+        packageListViewModel.packagesLoadingStateFlow,
+        packageListViewModel.versionHistoriesStateFlow,
+    ) { event, onlyStable, packageLoadingState, versionHistories ->
         when (event) {
             is InfoPanelContentEvent.Package -> {
                 val isLoading = event.packageListId in packageLoadingState
                 when (event) {
-                    is InfoPanelContentEvent.Package.Declared.Base ->
-                        event.asPanelContent(project.PackageSearchProjectService, onlyStable, isLoading)
-
-                    is InfoPanelContentEvent.Package.Declared.WithVariant ->
-                        event.asPanelContent(project.PackageSearchProjectService, onlyStable, isLoading)
+                    is InfoPanelContentEvent.Package.Declared.Base -> event.asPanelContent(
+                        context = project.PackageSearchProjectService,
+                        onlyStable = onlyStable,
+                        isLoading = isLoading,
+                        versionHistory = versionHistories[event.declaredPackage.id],
+                    )
+
+                    is InfoPanelContentEvent.Package.Declared.WithVariant -> event.asPanelContent(
+                        context = project.PackageSearchProjectService,
+                        onlyStable = onlyStable,
+                        isLoading = isLoading,
+                        versionHistory = versionHistories[event.declaredPackage.id],
+                    )
 
                     is InfoPanelContentEvent.Package.Remote.Base ->
                         event.asPanelContent(project.PackageSearchProjectService, onlyStable, isLoading)
@@ -101,6 +111,7 @@ class InfoPanelViewModel(
         packageId: PackageListItem.Package.Declared.Id.Base,
     ) {
         setDataEventChannel.trySend(InfoPanelContentEvent.Package.Declared.Base(module, declaredPackage, packageId))
+        loadVersionHistory(declaredPackage)
     }
 
     fun setPackage(
@@ -117,6 +128,12 @@ class InfoPanelViewModel(
                 variantName = variantName
             )
         )
+        loadVersionHistory(declaredPackage)
+    }
+
+    private fun loadVersionHistory(declaredPackage: PackageSearchDeclaredPackage) {
+        if (declaredPackage.remoteInfo == null) return
+        viewModelScope.launch { packageListViewModel.loadVersionHistory(declaredPackage.id, nextPage = false) }
     }
 
     fun setPackage(
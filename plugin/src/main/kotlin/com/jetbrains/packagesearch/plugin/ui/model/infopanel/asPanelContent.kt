@@ -8,6 +8,7 @@ import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchKnownRepo
 import com.jetbrains.packagesearch.plugin.core.utils.icon
 import com.jetbrains.packagesearch.plugin.core.utils.parseAttributesFromRawStrings
 import com.jetbrains.packagesearch.plugin.ui.model.getLatestVersion
+import com.jetbrains.packagesearch.plugin.ui.model.packageslist.VersionHistory
 import org.jetbrains.packagesearch.api.v3.ApiMavenPackage
 import org.jetbrains.packagesearch.api.v3.ApiPackage
 import org.jetbrains.packagesearch.api.v3.http.PackageSearchEndpointPaths.knownRepositories
@@ -22,6 +23,7 @@ internal fun InfoPanelContentEvent.Package.Declared.Base.asPanelContent(
     context: PackageSearchKnownRepositoriesContext,
     onlyStable: Boolean,
     isLoading: Boolean,
+    versionHistory: VersionHistory?,
 ) = buildList {
     add(
         InfoPanelContent.PackageInfo.Declared.Base(
@@ -46,12 +48,8 @@ internal fun InfoPanelContentEvent.Package.Declared.Base.asPanelContent(
                 ?: message("packagesearch.ui.missingVersion"),
             declaredScope = declaredPackage.declaredScope
                 ?: message("packagesearch.ui.missingScope"),
-            availableVersions = declaredPackage.remoteInfo
-                ?.versions
-                ?.all
-                ?.filter { if (onlyStable) it.normalizedVersion.isStable else true }
-                ?.map { it.normalizedVersion.versionName }
-                ?: emptyList(),
+            availableVersions = declaredPackage.getAvailableVersionStrings(onlyStable, versionHistory),
+            hasMoreVersions = declaredPackage.remoteInfo != null && versionHistory?.hasMore ?: true,
             availableScopes = module.availableScopes,
             isLoading = isLoading,
             allowMissingScope = !module.dependencyMustHaveAScope
@@ -61,6 +59,23 @@ internal fun InfoPanelContentEvent.Package.Declared.Base.asPanelContent(
 }
 
 
+/**
+ * Merges the versions carried by the module snapshot with the pages of [versionHistory] loaded so far.
+ */
+private fun PackageSearchDeclaredPackage.getAvailableVersionStrings(
+    onlyStable: Boolean,
+    versionHistory: VersionHistory?,
+): List<String> {
+    val summaryVersions = remoteInfo?.versions?.all?.map { it.normalizedVersion }.orEmpty()
+    return (summaryVersions + versionHistory?.versions.orEmpty())
+        .asSequence()
+        .filter { !onlyStable || it.isStable }
+        .distinctBy { it.versionName }
+        .sortedDescending()
+        .map { it.versionName }
+        .toList()
+}
+
 internal val PackageSearchDeclaredPackage.typeInfo: InfoPanelContent.PackageInfo.Type?
     get() {
         return InfoPanelContent.PackageInfo.Type(
@@ -97,6 +112,7 @@ internal fun InfoPanelContentEvent.Package.Declared.WithVariant.asPanelContent(
     context: PackageSearchKnownRepositoriesContext,
     onlyStable: Boolean,
     isLoading: Boolean,
+    versionHistory: VersionHistory?,
 ) = buildList {
     add(
         InfoPanelContent.PackageInfo.Declared.WithVariant(
@@ -121,12 +137,8 @@ internal fun InfoPanelContentEvent.Package.Declared.WithVariant.asPanelContent(
                 ?: message("packagesearch.ui.missingVersion"),
             declaredScope = declaredPackage.declaredScope
                 ?: message("packagesearch.ui.missingScope"),
-            availableVersions = declaredPackage.remoteInfo
-                ?.versions
-                ?.all
-                ?.filter { if (onlyStable) it.normalizedVersion.isStable else true }
-                ?.map { it.normalizedVersion.versionName }
-                ?: emptyList(),
+            availableVersions = declaredPackage.getAvailableVersionStrings(onlyStable, versionHistory),
+            hasMoreVersions = declaredPackage.remoteInfo != null && versionHistory?.hasMore ?: true,
             availableScopes = module.variants.getValue(variantName).availableScopes,
             isLoading = isLoading,
             compatibleVariants = module.variants.keys.sorted() - variantName,
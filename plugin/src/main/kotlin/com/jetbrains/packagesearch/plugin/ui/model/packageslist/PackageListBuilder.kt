@@ -17,6 +17,7 @@ class PackageListBuilder(
     private val headerLoadingStates: Set<PackageListItem.Header.Id.Declared>,
     private val searchQuery: String,
     private val modulesMap: Map<PackageSearchModule.Identity, PackageSearchModule>,
+    private val versionHistories: Map<String, VersionHistory>,
 ) {
 
     companion object {
@@ -41,25 +42,25 @@ class PackageListBuilder(
             .takeIf { it > 0 }
             ?.let { PackageListItem.Header.AdditionalContent.UpdatesAvailableCount(it) }
 
-    private fun PackageSearchDeclaredPackage.getAvailableVersionStrings() = when {
-        onlyStable -> remoteInfo?.versions?.all
-            ?.asSequence()
-            ?.filter { it.normalizedVersion.isStable }
-            ?.map { it.normalizedVersion }
-            ?.sortedDescending()
-            ?.map { it.versionName }
-            ?.toList()
-            ?: emptyList()
-
-        else -> remoteInfo?.versions?.all
-            ?.asSequence()
-            ?.map { it.normalizedVersion }
-            ?.sortedDescending()
-            ?.map { it.versionName }
-            ?.toList()
-            ?: emptyList()
+    /**
+     * Module snapshots only carry the latest versions of a package, the rest of the
+     * history is added as its pages get loaded.
+     */
+    private fun PackageSearchDeclaredPackage.getAvailableVersionStrings(): List<String> {
+        val summaryVersions = remoteInfo?.versions?.all?.map { it.normalizedVersion }.orEmpty()
+        val loadedVersions = versionHistories[id]?.versions.orEmpty()
+        return (summaryVersions + loadedVersions)
+            .asSequence()
+            .filter { !onlyStable || it.isStable }
+            .distinctBy { it.versionName }
+            .sortedDescending()
+            .map { it.versionName }
+            .toList()
     }
 
+    private fun PackageSearchDeclaredPackage.hasMoreVersions() =
+        remoteInfo != null && versionHistories[id]?.hasMore ?: true
+
     private fun PackageSearchDeclaredPackage.matchesSearchQuery() = matchesSearchQuery(searchQuery)
 
     fun addFromModules(modules: List<PackageSearchModule>) {
@@ -103,6 +104,8 @@ class PackageListBuilder(
                         availableScopes = base.availableScopes,
                         declaredVersion = dependency.declaredVersion?.versionName,
                         availableVersions = dependency.getAvailableVersionStrings(),
+                        hasMoreVersions = dependency.hasMoreVersions(),
+                        isDeclarationLocated = dependency.declarationIndexes.isLocated,
                         allowMissingScope = !base.dependencyMustHaveAScope,
                     )
                 }
@@ -119,7 +122,9 @@ class PackageListBuilder(
         availableScopes: List<String>,
         declaredVersion: String?,
         availableVersions: List<String>,
+        hasMoreVersions: Boolean,
         allowMissingScope: Boolean,
+        isDeclarationLocated: Boolean = true,
     ) {
         items.add(
             PackageListItem.Package.Declared(
@@ -127,12 +132,14 @@ class PackageListBuilder(
                 id = id,
                 subtitle = subtitle,
                 icon = icon,
-                isLoading = id in packagesLoadingState,
+                // declarations not located yet are read-only until the build file is parsed
+                isLoading = id in packagesLoadingState || !isDeclarationLocated,
                 latestVersion = latestVersion,
                 selectedScope = selectedScope,
                 availableScopes = availableScopes.filter { it != selectedScope },
                 declaredVersion = declaredVersion,
                 availableVersions = availableVersions.filter { it != declaredVersion },
+                hasMoreVersions = hasMoreVersions,
                 allowMissingScope = allowMissingScope,
             )
         )
@@ -207,6 +214,8 @@ class PackageListBuilder(
                                 availableScopes = variant.availableScopes,
                                 declaredVersion = dependency.declaredVersion?.versionName,
                                 availableVersions = dependency.getAvailableVersionStrings(),
+                                hasMoreVersions = dependency.hasMoreVersions(),
+                                isDeclarationLocated = dependency.declarationIndexes.isLocated,
                                 allowMissingScope = !module.dependencyMustHaveAScope,
                             )
                         }
@@ -249,6 +258,8 @@ class PackageListBuilder(
                         availableScopes = variant.availableScopes,
                         declaredVersion = dependency.declaredVersion?.versionName,
                         availableVersions = dependency.getAvailableVersionStrings(),
+                        hasMoreVersions = dependency.hasMoreVersions(),
+                        isDeclarationLocated = dependency.declarationIndexes.isLocated,
                         allowMissingScope = !module.dependencyMustHaveAScope,
                     )
                 }
@@ -88,6 +88,7 @@ sealed interface PackageListItem {
             val availableScopes: List<String>,
             val declaredVersion: String?,
             val availableVersions: List<String>,
+            val hasMoreVersions: Boolean,
         ) : Package {
 
             @Serializable
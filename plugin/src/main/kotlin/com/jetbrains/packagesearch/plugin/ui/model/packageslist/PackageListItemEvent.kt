@@ -76,6 +76,16 @@ sealed interface PackageListItemEvent {
 
     }
 
+    /**
+     * Requests the version history of a declared package: its first page if none was loaded
+     * yet, or the next one if [nextPage] is `true`.
+     */
+    @Serializable
+    data class LoadVersionHistory(
+        override val eventId: PackageListItem.Package.Declared.Id,
+        val nextPage: Boolean,
+    ) : PackageListItemEvent
+
     @Serializable
     data class UpdateAllPackages(
         override val eventId: PackageListItem.Header.Id.Declared,
@@ -14,14 +14,18 @@ import com.jetbrains.packagesearch.plugin.core.data.PackageSearchDependencyManag
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModuleEditor
 import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.lowMemoryFlow
 import com.jetbrains.packagesearch.plugin.core.utils.replayOn
 import com.jetbrains.packagesearch.plugin.fus.PackageSearchFUSEvent
+import com.jetbrains.packagesearch.plugin.services.declaredPackageIds
 import com.jetbrains.packagesearch.plugin.ui.model.getLatestVersion
 import com.jetbrains.packagesearch.plugin.ui.model.hasUpdates
 import com.jetbrains.packagesearch.plugin.ui.model.infopanel.InfoPanelViewModel
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.SetHeaderState.TargetState
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.SetHeaderState.TargetState.OPEN
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiClientService
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiPackagesService
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchProjectService
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchSettingsService
@@ -30,6 +34,7 @@ import kotlin.time.Duration.Companion.milliseconds
 import kotlin.time.Duration.Companion.seconds
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -39,6 +44,7 @@ import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.consumeAsFlow
 import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.launchIn
 import kotlinx.coroutines.flow.map
@@ -49,6 +55,10 @@ import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
@@ -87,11 +97,24 @@ class PackageListViewModel(
     ) { selectedModules, modulesByIdentity ->
         modulesByIdentity.filterKeys { it in selectedModules }.values.toList()
     }
+        // unchanged modules keep their instance, changes to other modules are ignored
+        .distinctUntilChanged { old, new -> old.size == new.size && old.zip(new).all { (a, b) -> a === b } }
         .shareIn(viewModelScope, SharingStarted.Lazily, 1)
 
     private val searchQueryMutableStateFlow = MutableStateFlow("")
     val searchQueryStateFlow = searchQueryMutableStateFlow.asStateFlow()
 
+    private val searchResultsCache = SearchResultsCache(
+        apis = IntelliJApplication.PackageSearchApiClientService.client,
+        coroutineScope = viewModelScope,
+    )
+
+    /**
+     * Searches for the variant groups that are not open yet, started once the main group has
+     * its results and cancelled as soon as the search query changes.
+     */
+    private var variantSearchesPrefetchJob: Job? = null
+
     init {
         searchQueryStateFlow
             .filter { it.isNotEmpty() }
@@ -102,6 +125,10 @@ class PackageListViewModel(
         selectedModulesFlow
             .onEach { logFUSEvent(PackageSearchFUSEvent.TargetModulesSelected(it)) }
             .launchIn(viewModelScope)
+
+        lowMemoryFlow
+            .onEach { searchResultsCache.clear() }
+            .launchIn(viewModelScope)
     }
 
     private val headerCollapsedStatesFlow: MutableStateFlow<Map<PackageListItem.Header.Id, TargetState>> =
@@ -115,6 +142,28 @@ class PackageListViewModel(
     private val headerLoadingStatesFlow =
         MutableStateFlow(emptySet<PackageListItem.Header.Id.Declared>())
 
+    private val versionHistoriesMutableStateFlow = MutableStateFlow(emptyMap<String, VersionHistory>())
+
+    /**
+     * Version histories of declared packages, keyed by package id, loaded page by page
+     * only when a version dropdown or the info panel asks for them.
+     */
+    val versionHistoriesStateFlow = versionHistoriesMutableStateFlow.asStateFlow()
+
+    private val versionHistoryLoadingMutex = Mutex()
+
+    init {
+        // loaded histories are dropped once their package is no longer declared by the selected modules
+        selectedModulesFlow
+            .map { it.declaredPackageIds }
+            .onEach { packageIds -> versionHistoriesMutableStateFlow.update { it.filterKeys { id -> id in packageIds } } }
+            .launchIn(viewModelScope)
+
+        lowMemoryFlow
+            .onEach { versionHistoriesMutableStateFlow.value = emptyMap() }
+            .launchIn(viewModelScope)
+    }
+
     private val isLoadingChannel = Channel<Boolean>()
     val isLoadingFlow = isLoadingChannel.consumeAsFlow()
         .debounce(50.milliseconds)
@@ -140,6 +189,7 @@ class PackageListViewModel(
     }
         .replayOn(restartSearchFlow)
         .mapLatest { data ->
+            variantSearchesPrefetchJob?.cancel()
             val map: Map<PackageListItem.Header.Id.Remote, Search> = when (data) {
                 null -> emptyMap()
                 else -> {
@@ -185,20 +235,24 @@ class PackageListViewModel(
             searchQueryFlow = searchQueryStateFlow,
             stableOnlyFlow = project.PackageSearchSettingsService.stableOnlyFlow,
             isOnlineSearchEnabledFlow = isOnlineSearchEnabledFlow,
+            versionHistoriesFlow = versionHistoriesStateFlow,
         )
             .map { change ->
-                buildPackageList(
-                    isCompact = change.selectedModules.size > 1,
-                    onlyStable = change.stableOnly,
-                    headerCollapsedStates = change.headerCollapsedStates,
-                    packagesLoadingState = change.packagesLoadingState,
-                    searchQuery = change.searchQuery,
-                    headerLoadingStates = change.headerLoadingStates,
-                    modulesMap = change.selectedModules.associateBy { it.identity },
-                ) {
-                    addFromModules(change.selectedModules)
-                    if (change.isOnlineSearchEnabled) {
-                        addFromSearch(change.searchResultMap)
+                PackageSearchMetrics.measure("ui.packageList.build") {
+                    buildPackageList(
+                        isCompact = change.selectedModules.size > 1,
+                        onlyStable = change.stableOnly,
+                        headerCollapsedStates = change.headerCollapsedStates,
+                        packagesLoadingState = change.packagesLoadingState,
+                        searchQuery = change.searchQuery,
+                        headerLoadingStates = change.headerLoadingStates,
+                        modulesMap = change.selectedModules.associateBy { it.identity },
+                        versionHistories = change.versionHistories,
+                    ) {
+                        addFromModules(change.selectedModules)
+                        if (change.isOnlineSearchEnabled) {
+                            addFromSearch(change.searchResultMap)
+                        }
                     }
                 }
             }
@@ -214,7 +268,7 @@ class PackageListViewModel(
                 this.searchQuery = searchQuery
                 packagesType = compatiblePackageTypes
             },
-            apis = IntelliJApplication.PackageSearchApiClientService.client,
+            apis = searchResultsCache,
         ).execute()
         headerCollapsedStatesFlow.update { current ->
             when (headerId) {
@@ -249,7 +303,7 @@ class PackageListViewModel(
                                 this.searchQuery = searchQuery
                                 this.packagesType = packagesType
                             },
-                            apis = IntelliJApplication.PackageSearchApiClientService.client,
+                            apis = searchResultsCache,
                             attributes = attributes,
                             primaryVariantName = primaryVariantName,
                             additionalVariants = additionalVariants,
@@ -269,7 +323,7 @@ class PackageListViewModel(
                             this.searchQuery = searchQuery
                             this.packagesType = packagesType
                         },
-                        apis = IntelliJApplication.PackageSearchApiClientService.client,
+                        apis = searchResultsCache,
                         attributes = attributes,
                         primaryVariantName = primaryVariantName,
                         additionalVariants = additionalVariants,
@@ -277,6 +331,19 @@ class PackageListViewModel(
                 }
                 headerId to search
             }
+            .also { searches -> prefetchVariantSearches(searches.values.filterIsInstance<Search.Query>()) }
+
+    /**
+     * Runs [queries] in the background, at most [MAX_PARALLEL_VARIANT_SEARCHES] at a time, so that
+     * their results are already in [searchResultsCache] when their header is opened.
+     */
+    private fun prefetchVariantSearches(queries: List<Search.Query>) {
+        if (queries.isEmpty()) return
+        val permits = Semaphore(MAX_PARALLEL_VARIANT_SEARCHES)
+        variantSearchesPrefetchJob = viewModelScope.launch {
+            queries.forEach { query -> launch { permits.withPermit { query.execute() } } }
+        }
+    }
 
     fun clearSearchQuery() {
         viewModelScope.launch {
@@ -292,6 +359,7 @@ class PackageListViewModel(
     fun setSelectedModules(modules: Set<PackageSearchModule.Identity>) {
         viewModelScope.launch {
             selectedModuleIdsChannel.send(modules)
+            project.PackageSearchProjectService.resolutionScheduler.selectedModules.value = modules
             packagesLoadingMutableStateFlow.emit(emptySet())
             headerLoadingStatesFlow.emit(emptySet())
         }
@@ -318,6 +386,7 @@ class PackageListViewModel(
                 is PackageListItemEvent.SetHeaderState -> handle(event)
                 is PackageListItemEvent.UpdateAllPackages -> handle(event)
                 is PackageListItemEvent.OnRetryPackageSearch -> handle(event)
+                is PackageListItemEvent.LoadVersionHistory -> handle(event)
             }
         }
     }
@@ -327,6 +396,37 @@ class PackageListViewModel(
         restartSearchChannel.send(Unit)
     }
 
+    @Suppress("unused")
+    private suspend fun handle(event: PackageListItemEvent.LoadVersionHistory) {
+        loadVersionHistory(event.eventId.packageId, event.nextPage)
+    }
+
+    /**
+     * Loads the first page of the version history of [packageId] if none was loaded yet,
+     * or the next one if [nextPage] is `true` and there is any left.
+     */
+    suspend fun loadVersionHistory(packageId: String, nextPage: Boolean) {
+        versionHistoryLoadingMutex.withLock {
+            val current = versionHistoriesMutableStateFlow.value[packageId]
+            if (current != null && (!nextPage || !current.hasMore)) return
+            val loadedVersions = current?.versions.orEmpty()
+            val page = runCatching {
+                IntelliJApplication.PackageSearchApiPackagesService
+                    .getVersionHistory(packageId, offset = loadedVersions.size)
+            }
+                .onFailure {
+                    PackageSearchLogger.logWarn("${this::class.qualifiedName}#loadVersionHistory", throwable = it) {
+                        "Failed to load versions of $packageId"
+                    }
+                }
+                .getOrNull()
+                ?: return
+            versionHistoriesMutableStateFlow.update {
+                it + (packageId to VersionHistory(loadedVersions + page.versions, page.hasMore))
+            }
+        }
+    }
+
     @Suppress("unused")
     private fun handle(event: PackageListItemEvent.InfoPanelEvent.OnHeaderVariantsClick) {
         PackageSearchLogger.logTODO()
@@ -431,12 +531,13 @@ class PackageListViewModel(
 
     private suspend fun handle(actionType: PackageListItemEvent.OnPackageAction.Remove) {
         packagesLoadingMutableStateFlow.update { it + actionType.eventId }
-        val module = actionType.eventId.getModule() ?: return
+        val module = actionType.eventId.getLiveModule() ?: return
         module.editModule {
             when (module) {
                 is PackageSearchModule.Base -> {
                     val declaredPackage = module.declaredDependencies
                         .firstOrNull { it.id == actionType.eventId.packageId }
+                        ?.takeIf { it.declarationIndexes.isLocated }
                         ?: return@editModule
                     logFUSEvent(
                         event = PackageSearchFUSEvent.PackageRemoved(
@@ -456,6 +557,7 @@ class PackageListViewModel(
                         ?: return@editModule
                     val declaredPackage = variant.declaredDependencies
                         .firstOrNull { it.id == eventId.packageId }
+                        ?.takeIf { it.declarationIndexes.isLocated }
                         ?: return@editModule
                     logFUSEvent(
                         event = PackageSearchFUSEvent.PackageRemoved(
@@ -473,7 +575,7 @@ class PackageListViewModel(
     private suspend fun handle(actionType: PackageListItemEvent.OnPackageAction.Install.WithVariant) {
         packagesLoadingMutableStateFlow.update { it + actionType.eventId }
         val module = actionType.eventId
-            .getModule() as? PackageSearchModule.WithVariants
+            .getLiveModule() as? PackageSearchModule.WithVariants
             ?: return
         val variant = module.variants[actionType.selectedVariantName]
             ?: return
@@ -501,7 +603,7 @@ class PackageListViewModel(
     private suspend fun handle(actionType: PackageListItemEvent.OnPackageAction.Install.Base) {
         packagesLoadingMutableStateFlow.update { it + actionType.eventId }
         val module = actionType.eventId
-            .getModule() as? PackageSearchModule.Base
+            .getLiveModule() as? PackageSearchModule.Base
             ?: return
         val search =
             searchResultMapFlow.value[actionType.headerId] as? Search.Response.Base.Success ?: return
@@ -573,7 +675,9 @@ class PackageListViewModel(
             }
 
             null -> return
-        } ?: return
+        }
+            ?.takeIf { it.declarationIndexes.isLocated }
+            ?: return
         logFUSEvent(PackageSearchFUSEvent.GoToSource(module, dependency.id))
         val buildFile = module.buildFilePath
             ?.let { LocalFileSystem.getInstance().findFileByNioFile(it) }
@@ -603,6 +707,15 @@ class PackageListViewModel(
         val (module, editor, manager, dependency) =
             event.eventId.getDependencyManagers() ?: return
         runCatching {
+            // the version history is not part of the module snapshot, look up the repositories before editing
+            val selectedVersionRepositoryIds = when {
+                event is PackageListItemEvent.EditPackageEvent.SetPackageVersion &&
+                        project.PackageSearchSettingsService.installRepositoryIfNeededFlow.value ->
+                    IntelliJApplication.PackageSearchApiPackagesService
+                        .getVersionRepositoryIds(dependency.id, event.version)
+
+                else -> emptyList()
+            }
             editor.editModule {
                 when (event) {
                     is PackageListItemEvent.EditPackageEvent.SetPackageScope -> {
@@ -631,14 +744,10 @@ class PackageListViewModel(
                                 targetModule = module
                             )
                         )
-                        if (project.PackageSearchSettingsService.installRepositoryIfNeededFlow.value) {
-                            dependency.remoteInfo?.versions?.all
-                                ?.firstOrNull { it.normalizedVersion.versionName == event.version }
-                                ?.repositoryIds
-                                ?.firstNotNullOfOrNull { project.PackageSearchProjectService.knownRepositories[it] }
-                                ?.takeIf { it.url !in module.declaredRepositories.map { it.url } }
-                                ?.let { editor.addRepository(this, it) }
-                        }
+                        selectedVersionRepositoryIds
+                            .firstNotNullOfOrNull { project.PackageSearchProjectService.knownRepositories[it] }
+                            ?.takeIf { it.url !in module.declaredRepositories.map { it.url } }
+                            ?.let { editor.addRepository(this, it) }
                         manager.updateDependency(
                             context = this,
                             declaredPackage = dependency,
@@ -706,12 +815,13 @@ class PackageListViewModel(
     @Suppress("unused")
     private suspend fun handle(event: PackageListItemEvent.EditPackageEvent.SetVariant) {
         val module = event.eventId
-            .getModule() as? PackageSearchModule.WithVariants
+            .getLiveModule() as? PackageSearchModule.WithVariants
             ?: return
         val variant = module.variants[event.eventId.variantName]
             ?: return
         val declaredPackage = variant.declaredDependencies
             .firstOrNull { it.id == event.eventId.packageId }
+            ?.takeIf { it.declarationIndexes.isLocated }
             ?: return
         val newVariant = module.variants[event.selectedVariantName]
             ?: return
@@ -729,10 +839,10 @@ class PackageListViewModel(
         headerLoadingStatesFlow.update { it + event.eventId }
         logFUSEvent(PackageSearchFUSEvent.UpgradeAll)
         val onlyStable = project.PackageSearchSettingsService.stableOnlyFlow.value
-        when (val module = event.eventId.getModule()) {
+        when (val module = event.eventId.getLiveModule()) {
             is PackageSearchModule.Base -> {
                 val packagesToUpdate = module.declaredDependencies
-                    .filter { it.hasUpdates(onlyStable) }
+                    .filter { it.hasUpdates(onlyStable) && it.declarationIndexes.isLocated }
                     .filter { it.matchesSearchQuery(searchQueryStateFlow.value) }
                 val listIds = packagesToUpdate.map {
                     PackageListItem.Package.Declared.Id.Base(module.identity, it.id)
@@ -773,7 +883,7 @@ class PackageListViewModel(
                 val packagesToUpdate =
                     module.variants.values.flatMap { variant ->
                         variant.declaredDependencies
-                            .filter { it.hasUpdates(onlyStable) }
+                            .filter { it.hasUpdates(onlyStable) && it.declarationIndexes.isLocated }
                             .filter { it.matchesSearchQuery(searchQueryStateFlow.value) }
                             .map { variant to it }
                     }
@@ -813,16 +923,25 @@ class PackageListViewModel(
             .modulesByIdentity
             .value[moduleIdentity]
 
-    private fun PackageListItem.Package.Declared.Id.getDependencyManagers(): PackageSearchDependencyHandlers? {
+    /**
+     * Returns the module to edit, waiting for the live modules to replace the ones restored
+     * from the snapshot, which cannot be edited.
+     */
+    private suspend fun PackageListItem.Id.getLiveModule() =
+        project.PackageSearchProjectService
+            .awaitLiveModulesByIdentity()[moduleIdentity]
+
+    private suspend fun PackageListItem.Package.Declared.Id.getDependencyManagers(): PackageSearchDependencyHandlers? {
         val modulesById = project.PackageSearchProjectService
-            .modulesByIdentity.value
+            .awaitLiveModulesByIdentity()
         return when (this) {
             is PackageListItem.Package.Declared.Id.Base -> {
-                val module = getModule() as? PackageSearchModule.Base ?: return null
+                val module = modulesById[moduleIdentity] as? PackageSearchModule.Base ?: return null
                 PackageSearchDependencyHandlers(
                     module = module,
                     declaredPackage = module.declaredDependencies
                         .firstOrNull { it.id == packageId }
+                        ?.takeIf { it.declarationIndexes.isLocated }
                         ?: return null,
                 )
             }
@@ -839,10 +958,14 @@ class PackageListViewModel(
                     manager = variant,
                     declaredPackage = variant.declaredDependencies
                         .firstOrNull { it.id == packageId }
+                        ?.takeIf { it.declarationIndexes.isLocated }
                         ?: return null,
                 )
             }
         }
     }
 
+    companion object {
+        private const val MAX_PARALLEL_VARIANT_SEARCHES = 4
+    }
 }
@@ -2,7 +2,6 @@ package com.jetbrains.packagesearch.plugin.ui.model.packageslist
 
 import kotlin.coroutines.cancellation.CancellationException
 import org.jetbrains.packagesearch.api.v3.ApiPackage
-import org.jetbrains.packagesearch.api.v3.http.PackageSearchApiClient
 import org.jetbrains.packagesearch.api.v3.http.SearchPackagesRequest
 
 sealed interface Search {
@@ -16,13 +15,13 @@ sealed interface Search {
     sealed interface Query : Search {
 
         val query: SearchPackagesRequest
-        val apis: PackageSearchApiClient
+        val apis: SearchResultsCache
 
         suspend fun execute(): Response
 
         data class Base(
             override val query: SearchPackagesRequest,
-            override val apis: PackageSearchApiClient,
+            override val apis: SearchResultsCache,
         ) : Query {
             override suspend fun execute(): Response.Base {
                 val searchResult =
@@ -37,7 +36,7 @@ sealed interface Search {
 
         data class WithVariants(
             override val query: SearchPackagesRequest,
-            override val apis: PackageSearchApiClient,
+            override val apis: SearchResultsCache,
             override val attributes: List<String>,
             override val primaryVariantName: String,
             override val additionalVariants: List<String>,
@@ -0,0 +1,128 @@
+package com.jetbrains.packagesearch.plugin.ui.model.packageslist
+
+import com.jetbrains.packagesearch.plugin.utils.PackageSearchMemoryCache
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.minutes
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import org.jetbrains.packagesearch.api.v3.ApiPackage
+import org.jetbrains.packagesearch.api.v3.http.PackageSearchApiClient
+import org.jetbrains.packagesearch.api.v3.http.SearchPackagesRequest
+import org.jetbrains.packagesearch.api.v3.search.PackagesType
+
+/**
+ * Caches the results of [PackageSearchApiClient.searchPackages], keyed by the normalized query and
+ * by the package types the searching module is compatible with.
+ *
+ * When a query extends a cached one whose result was complete, the cached result is narrowed
+ * locally, keeping the order of the API, instead of asking the API again. The API does not tell
+ * whether it truncated a result, nor its limit, but it truncates every result to the same number
+ * of packages: the limit is at least the size of the largest result seen so far, so a result
+ * smaller than that one is known to be complete. Until a larger result is seen, results of the
+ * largest size are not narrowed.
+ *
+ * Concurrent searches for the same key share a single request, which runs in [coroutineScope]
+ * so that it is not cancelled along with one of the callers waiting for it. The request is
+ * cancelled once the last caller waiting for it is, so that abandoned searches, like prefetches
+ * superseded by a new query, do not keep running.
+ */
+class SearchResultsCache(
+    private val apis: PackageSearchApiClient,
+    private val coroutineScope: CoroutineScope,
+    maximumSize: Long = 200,
+    expireAfterWrite: Duration = 10.minutes,
+) {
+
+    private data class Key(val query: String, val packagesType: List<PackagesType>)
+
+    private val cache = PackageSearchMemoryCache<Key, List<ApiPackage>>(
+        name = "searchResults",
+        maximumWeight = maximumSize,
+        expireAfterWrite = expireAfterWrite,
+    )
+
+    private val pendingSearches = ConcurrentHashMap<Key, PendingSearch>()
+
+    private val largestResultSize = AtomicInteger(0)
+
+    suspend fun searchPackages(request: SearchPackagesRequest): List<ApiPackage> {
+        val key = Key(request.searchQuery.normalizeQuery(), request.packagesType)
+        cache[key]?.let { return it }
+        narrowCompleteResult(key)?.let { packages ->
+            cache[key] = packages
+            return packages
+        }
+        val pendingSearch = pendingSearches.compute(key) { _, current ->
+            (current ?: PendingSearch(key, request)).apply { waiters++ }
+        }!!
+        try {
+            return pendingSearch.result.await().getOrThrow()
+        } finally {
+            pendingSearches.computeIfPresent(key) { _, current ->
+                when {
+                    current !== pendingSearch || --current.waiters > 0 -> current
+                    else -> {
+                        current.result.cancel()
+                        null
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A request shared by the callers searching for [key]. [waiters] is only read and written
+     * while computing the entry of [key] in [pendingSearches].
+     */
+    private inner class PendingSearch(key: Key, request: SearchPackagesRequest) {
+
+        var waiters = 0
+
+        val result: Deferred<Result<List<ApiPackage>>> = coroutineScope.async(start = CoroutineStart.LAZY) {
+            try {
+                // failures are rethrown to every caller instead of cancelling the owning scope
+                runCatching { apis.searchPackages(request) }
+                    .onSuccess { packages ->
+                        largestResultSize.accumulateAndGet(packages.size) { largest, size -> maxOf(largest, size) }
+                        cache[key] = packages
+                    }
+            } finally {
+                pendingSearches.remove(key, this@PendingSearch)
+            }
+        }
+    }
+
+    fun clear() {
+        cache.clear()
+    }
+
+    /**
+     * Narrowed results are smaller than the complete result they come from, hence complete as well.
+     */
+    private fun narrowCompleteResult(key: Key): List<ApiPackage>? {
+        val tokens = key.query.split(' ')
+        return (key.query.length - 1 downTo 1).asSequence()
+            // probing prefixes through the map view does not count them as misses
+            .mapNotNull { cache.asMap()[key.copy(query = key.query.substring(0, it).trimEnd())] }
+            .firstOrNull { it.isComplete() }
+            ?.filter { it.matches(tokens) }
+    }
+
+    private fun List<ApiPackage>.isComplete() = size < largestResultSize.get()
+
+    private fun ApiPackage.matches(tokens: List<String>): Boolean {
+        val haystack = listOfNotNull(id, name, description).joinToString(" ").lowercase()
+        return tokens.all { it in haystack }
+    }
+
+    private fun String.normalizeQuery() =
+        trim().lowercase().replace(WHITESPACES, " ")
+
+    companion object {
+        private val WHITESPACES = Regex("\\s+")
+    }
+}
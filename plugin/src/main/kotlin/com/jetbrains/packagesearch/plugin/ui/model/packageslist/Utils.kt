@@ -11,6 +11,7 @@ import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.runningFold
 import org.jetbrains.packagesearch.api.v3.search.PackagesType
+import org.jetbrains.packagesearch.packageversionutils.normalization.NormalizedVersion
 
 internal fun <T, R> Flow<T>.modifiedBy(
     transform: Flow<R>,
@@ -45,6 +46,7 @@ internal fun buildPackageList(
     searchQuery: String,
     headerLoadingStates: Set<PackageListItem.Header.Id.Declared>,
     modulesMap: Map<PackageSearchModule.Identity, PackageSearchModule>,
+    versionHistories: Map<String, VersionHistory>,
     block: PackageListBuilder.() -> Unit,
 ): List<PackageListItem> = PackageListBuilder(
     isCompact = isCompact,
@@ -53,7 +55,8 @@ internal fun buildPackageList(
     packagesLoadingState = packagesLoadingState,
     headerLoadingStates = headerLoadingStates,
     searchQuery = searchQuery,
-    modulesMap = modulesMap
+    modulesMap = modulesMap,
+    versionHistories = versionHistories,
 ).apply(block).build()
 
 internal data class PackageSearchDependencyHandlers(
@@ -82,6 +85,7 @@ internal fun combineListChanges(
     stableOnlyFlow: Flow<Boolean>,
     headerLoadingStatesFlow: MutableStateFlow<Set<PackageListItem.Header.Id.Declared>>,
     isOnlineSearchEnabledFlow: Flow<Boolean>,
+    versionHistoriesFlow: Flow<Map<String, VersionHistory>>,
 ): Flow<PackageListChange> = combine(
     modulesFlow,
     searchResultMapFlow,
@@ -90,7 +94,8 @@ internal fun combineListChanges(
     searchQueryFlow,
     stableOnlyFlow,
     headerLoadingStatesFlow,
-    isOnlineSearchEnabledFlow
+    isOnlineSearchEnabledFlow,
+    versionHistoriesFlow,
 ) {
         modules,
         searchResultMap,
@@ -99,7 +104,8 @@ internal fun combineListChanges(
         searchQuery,
         stableOnly,
         headerLoadingStates,
-        isOnlineSearchEnabled
+        isOnlineSearchEnabled,
+        versionHistories,
     ->
     PackageListChange(
         selectedModules = modules,
@@ -109,7 +115,8 @@ internal fun combineListChanges(
         searchQuery = searchQuery,
         stableOnly = stableOnly,
         headerLoadingStates = headerLoadingStates,
-        isOnlineSearchEnabled = isOnlineSearchEnabled
+        isOnlineSearchEnabled = isOnlineSearchEnabled,
+        versionHistories = versionHistories,
     )
 }
 
@@ -122,6 +129,15 @@ data class PackageListChange(
     val stableOnly: Boolean,
     val headerLoadingStates: Set<PackageListItem.Header.Id.Declared>,
     val isOnlineSearchEnabled: Boolean,
+    val versionHistories: Map<String, VersionHistory>,
+)
+
+/**
+ * The pages of the version history of a package loaded so far, from the most recent version.
+ */
+data class VersionHistory(
+    val versions: List<NormalizedVersion>,
+    val hasMore: Boolean,
 )
 
 fun PackageSearchDeclaredPackage.matchesSearchQuery(searchQuery: String): Boolean {
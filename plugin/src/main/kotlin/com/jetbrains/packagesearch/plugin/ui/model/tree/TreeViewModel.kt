@@ -1,11 +1,13 @@
 package com.jetbrains.packagesearch.plugin.ui.model.tree
 
 import androidx.compose.foundation.lazy.LazyListState
+import androidx.compose.runtime.snapshotFlow
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.components.Service.Level
 import com.intellij.openapi.project.Project
 import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
 import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchApiClientService
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchProjectService
@@ -13,9 +15,14 @@ import com.jetbrains.packagesearch.plugin.utils.PackageSearchSettingsService
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
-import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.drop
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.retry
+import kotlinx.coroutines.flow.scan
 import kotlinx.coroutines.flow.stateIn
 import org.jetbrains.jewel.foundation.lazy.SelectableLazyListState
 import org.jetbrains.jewel.foundation.lazy.tree.Tree
@@ -28,12 +35,20 @@ internal class TreeViewModel(
     viewModelScope: CoroutineScope,
 ) {
 
-    val treeStateFlow: StateFlow<Tree<TreeItemModel>> = combine(
-        project.PackageSearchProjectService.modulesStateFlow,
-        project.PackageSearchSettingsService.stableOnlyFlow
-    ) { modules, stableOnly ->
-        modules.asTree(stableOnly)
-    }
+    /**
+     * Item models are only built for the modules added or updated since the previous tree, all
+     * of them are built again when the stable only setting changes.
+     */
+    val treeStateFlow: StateFlow<Tree<TreeItemModel>> = project.PackageSearchSettingsService.stableOnlyFlow
+        .flatMapLatest { stableOnly ->
+            project.PackageSearchProjectService.modulesDeltaFlow
+                .scan(emptyMap<PackageSearchModule.Identity, TreeItemModel>()) { items, delta ->
+                    val upserted = delta.added + delta.updated
+                    items - delta.removed + upserted.mapValues { (_, module) -> module.asViewModel(stableOnly) }
+                }
+                .drop(1)
+        }
+        .map { items -> PackageSearchMetrics.measure("ui.tree.build") { items.values.asTree() } }
         .retry(5)
         .onEach { PackageSearchLogger.logDebug("${this::class.qualifiedName}#treeStateFlow") { it.print() } }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyTree())
@@ -51,6 +66,15 @@ internal class TreeViewModel(
     internal val lazyListState = LazyListState()
     internal val treeState = TreeState(SelectableLazyListState(lazyListState))
 
+    init {
+        // modules shown in the tree are resolved before the ones scrolled out of view
+        snapshotFlow { lazyListState.layoutInfo.visibleItemsInfo.map { it.key } }
+            .map { keys -> keys.filterIsInstance<PackageSearchModule.Identity>().toSet() }
+            .distinctUntilChanged()
+            .onEach { project.PackageSearchProjectService.resolutionScheduler.visibleModules.value = it }
+            .launchIn(viewModelScope)
+    }
+
     val isOnline
         get() = IntelliJApplication.PackageSearchApiClientService.client.onlineStateFlow
 
@@ -6,26 +6,25 @@ import org.jetbrains.jewel.foundation.lazy.tree.Tree
 import org.jetbrains.jewel.foundation.lazy.tree.TreeGeneratorScope
 import org.jetbrains.jewel.foundation.lazy.tree.buildTree
 
-internal fun List<PackageSearchModule>.asTree(stableOnly: Boolean): Tree<TreeItemModel> =
+internal fun Collection<TreeItemModel>.asTree(): Tree<TreeItemModel> =
     buildTree {
-        groupBy { it.identity.group }
-            .map { (_, modules) ->
-                val sortedItems = modules.sortedBy { it.identity.path }
-                val roots = sortedItems.filter { it.identity.path == ":" }.toSet()
+        groupBy { it.id.group }
+            .map { (_, items) ->
+                val sortedItems = items.sortedBy { it.id.path }
+                val roots = sortedItems.filter { it.id.path == ":" }.toSet()
                 when {
-                    roots.isNotEmpty() -> roots.forEach { module ->
+                    roots.isNotEmpty() -> roots.forEach { item ->
                         addElements(
                             sortedItems = sortedItems - roots,
-                            currentData = module,
-                            onlyStable = stableOnly,
+                            currentData = item,
                             isRoot = true
                         )
                     }
 
-                    else -> sortedItems.forEach { module ->
+                    else -> sortedItems.forEach { item ->
                         addLeaf(
-                            data = module.asViewModel(stableOnly),
-                            id = module.identity
+                            data = item,
+                            id = item.id
                         )
                     }
                 }
@@ -33,44 +32,42 @@ internal fun List<PackageSearchModule>.asTree(stableOnly: Boolean): Tree<TreeIte
     }
 
 private fun TreeGeneratorScope<TreeItemModel>.addElements(
-    sortedItems: List<PackageSearchModule>,
-    currentData: PackageSearchModule,
-    onlyStable: Boolean,
+    sortedItems: List<TreeItemModel>,
+    currentData: TreeItemModel,
     isRoot: Boolean = false,
 ) {
     val children = sortedItems
         .filter {
             val toRemove = buildString {
-                append(currentData.identity.path)
+                append(currentData.id.path)
                 if (!isRoot) append(":")
             }
-            it.identity.path.removePrefix(toRemove)
+            it.id.path.removePrefix(toRemove)
                 .run { isNotEmpty() && !contains(":") }
         }
         .toSet()
     if (children.isNotEmpty()) {
         addNode(
-            data = currentData.asViewModel(onlyStable),
-            id = currentData.identity,
+            data = currentData,
+            id = currentData.id,
         ) {
             children.forEach {
                 addElements(
                     sortedItems = sortedItems - children,
                     currentData = it,
-                    onlyStable = onlyStable
                 )
             }
         }
     } else {
         addLeaf(
-            data = currentData.asViewModel(onlyStable),
-            id = currentData.identity,
+            data = currentData,
+            id = currentData.id,
         )
     }
 
 }
 
-private fun PackageSearchModule.asViewModel(onlyStable: Boolean) =
+internal fun PackageSearchModule.asViewModel(onlyStable: Boolean) =
     TreeItemModel(
         id = identity,
         text = name,
@@ -82,4 +79,4 @@ private fun PackageSearchModule.asViewModel(onlyStable: Boolean) =
                 variants.any { it.value.declaredDependencies.any { it.hasUpdates(onlyStable) } }
         },
         icon = icon
-    )
\ No newline at end of file
+    )
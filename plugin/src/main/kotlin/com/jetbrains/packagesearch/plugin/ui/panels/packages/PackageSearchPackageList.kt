@@ -47,6 +47,7 @@ import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemE
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.EditPackageEvent.SetPackageVersion
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.InfoPanelEvent.OnPackageDoubleClick
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.InfoPanelEvent.OnPackageSelected
+import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.LoadVersionHistory
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.GoToSource
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.Install
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.Remove
@@ -234,8 +235,10 @@ private fun ScopeAndVersionDropdowns(
             VersionSelectionDropdown(
                 declaredVersion = item.declaredVersion,
                 availableVersions = item.availableVersions,
+                hasMoreVersions = item.hasMoreVersions,
                 latestVersion = item.latestVersion,
                 enabled = !item.isLoading,
+                onVersionHistoryRequested = { onPackageListItemEvent(LoadVersionHistory(item.id, it)) },
                 onVersionChanged = { onPackageListItemEvent(SetPackageVersion(item.id, it)) }
             )
         }
@@ -472,8 +475,10 @@ fun VersionSelectionDropdown(
     menuModifier: Modifier = Modifier,
     declaredVersion: String?,
     availableVersions: List<String>,
+    hasMoreVersions: Boolean,
     latestVersion: String?,
     enabled: Boolean,
+    onVersionHistoryRequested: (nextPage: Boolean) -> Unit,
     onVersionChanged: (String) -> Unit,
 ) {
     val contentText = buildString {
@@ -488,13 +493,21 @@ fun VersionSelectionDropdown(
             }
         }
     }
+    val moreVersions = message("packagesearch.ui.moreVersions")
     PackageSearchDropdownLink(
         modifier = modifier,
         menuModifier = menuModifier,
-        items = availableVersions,
+        items = if (hasMoreVersions) availableVersions + moreVersions else availableVersions,
         content = contentText,
         enabled = enabled,
-        onSelection = onVersionChanged,
+        onMenuRequested = { onVersionHistoryRequested(false) },
+        onSelection = {
+            if (hasMoreVersions && it == moreVersions) {
+                onVersionHistoryRequested(true)
+            } else {
+                onVersionChanged(it)
+            }
+        },
     )
 }
 
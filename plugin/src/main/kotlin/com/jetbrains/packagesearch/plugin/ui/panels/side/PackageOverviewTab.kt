@@ -27,6 +27,7 @@ import com.jetbrains.packagesearch.plugin.ui.model.infopanel.InfoPanelContent
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.EditPackageEvent.SetPackageScope
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.EditPackageEvent.SetPackageVersion
+import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.LoadVersionHistory
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.GoToSource
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.Install.WithVariant
 import com.jetbrains.packagesearch.plugin.ui.model.packageslist.PackageListItemEvent.OnPackageAction.Remove
@@ -72,8 +73,12 @@ internal fun PackageOverviewTab(
                     VersionSelectionDropdown(
                         declaredVersion = content.declaredVersion,
                         availableVersions = content.availableVersions,
+                        hasMoreVersions = content.hasMoreVersions,
                         latestVersion = content.latestVersion,
                         enabled = !content.isLoading,
+                        onVersionHistoryRequested = {
+                            onPackageEvent(LoadVersionHistory(content.packageListId, it))
+                        },
                     ) {
                         onPackageEvent(SetPackageVersion(content.packageListId, it))
                     }
@@ -0,0 +1,121 @@
+package com.jetbrains.packagesearch.plugin.utils
+
+import com.jetbrains.packagesearch.plugin.core.data.PackageSearchModule
+import java.nio.file.Path
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.job
+
+/**
+ * Runs module resolutions at most [maxConcurrency] at a time, picking first the modules the user
+ * is looking at, see [Priority].
+ *
+ * Priorities are evaluated each time a resolution slot frees up, so that opening a build file
+ * or selecting a module moves it ahead of the queue. When every slot is taken, a new resolution
+ * preempts the running one with the lowest priority, if lower than its own: the preempted
+ * resolution is cancelled and queued again.
+ */
+class ModuleResolutionScheduler(private val maxConcurrency: Int) {
+
+    enum class Priority {
+        OPENED_BUILD_FILE, SELECTED_MODULE, VISIBLE_MODULE, BACKGROUND
+    }
+
+    /** Directories of the build files opened in editors. */
+    val openedBuildFileDirectories = MutableStateFlow(emptySet<Path>())
+
+    val selectedModules = MutableStateFlow(emptySet<PackageSearchModule.Identity>())
+
+    val visibleModules = MutableStateFlow(emptySet<PackageSearchModule.Identity>())
+
+    private class Resolution(val projectDir: Path, val sequence: Long) {
+        val started = CompletableDeferred<Unit>()
+        var job: Job? = null
+        var priority = Priority.BACKGROUND
+        var isPreempted = false
+    }
+
+    private class PreemptedException : CancellationException("Preempted by a module resolution with a higher priority")
+
+    private val lock = Any()
+    private val waiting = mutableListOf<Resolution>()
+    private val running = mutableSetOf<Resolution>()
+    private var sequence = 0L
+
+    /**
+     * Runs [resolve], the resolution of the module in [projectDir], once its turn comes.
+     * [resolve] may be run again from the start if preempted.
+     */
+    suspend fun <T> schedule(projectDir: Path, resolve: suspend () -> T): T {
+        val normalizedProjectDir = projectDir.toAbsolutePath().normalize()
+        while (true) {
+            val resolution = enqueue(normalizedProjectDir)
+            try {
+                resolution.started.await()
+                return coroutineScope {
+                    synchronized(lock) {
+                        resolution.job = coroutineContext.job
+                        if (resolution.isPreempted) throw PreemptedException()
+                    }
+                    resolve()
+                }
+            } catch (e: PreemptedException) {
+                currentCoroutineContext().ensureActive()
+            } catch (e: CancellationException) {
+                if (!resolution.isPreempted) throw e
+                currentCoroutineContext().ensureActive()
+            } finally {
+                release(resolution)
+            }
+        }
+    }
+
+    private fun enqueue(projectDir: Path): Resolution = synchronized(lock) {
+        val resolution = Resolution(projectDir, sequence++)
+        waiting.add(resolution)
+        dispatch()
+        if (!resolution.started.isCompleted) preemptFor(resolution)
+        resolution
+    }
+
+    private fun release(resolution: Resolution) = synchronized(lock) {
+        waiting.remove(resolution)
+        if (running.remove(resolution)) dispatch()
+    }
+
+    private fun dispatch() {
+        while (running.size < maxConcurrency && waiting.isNotEmpty()) {
+            waiting.forEach { it.priority = priorityOf(it.projectDir) }
+            val next = waiting.minWith(compareBy<Resolution>({ it.priority }, { it.sequence }))
+            waiting.remove(next)
+            running.add(next)
+            next.started.complete(Unit)
+        }
+    }
+
+    private fun preemptFor(resolution: Resolution) {
+        resolution.priority = priorityOf(resolution.projectDir)
+        if (resolution.priority == Priority.BACKGROUND) return
+        val victim = running
+            .filter { !it.isPreempted }
+            .onEach { it.priority = priorityOf(it.projectDir) }
+            .maxWithOrNull(compareBy<Resolution>({ it.priority }, { it.sequence }))
+            ?.takeIf { it.priority > resolution.priority }
+            ?: return
+        // the slot of the victim is freed once it has stopped, see schedule
+        victim.isPreempted = true
+        victim.job?.cancel(PreemptedException())
+    }
+
+    private fun priorityOf(projectDir: Path) = when {
+        projectDir in openedBuildFileDirectories.value -> Priority.OPENED_BUILD_FILE
+        selectedModules.value.any { it.projectDir == projectDir } -> Priority.SELECTED_MODULE
+        visibleModules.value.any { it.projectDir == projectDir } -> Priority.VISIBLE_MODULE
+        else -> Priority.BACKGROUND
+    }
+}
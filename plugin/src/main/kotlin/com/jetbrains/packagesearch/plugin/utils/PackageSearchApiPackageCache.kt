@@ -0,0 +1,206 @@
+package com.jetbrains.packagesearch.plugin.utils
+
+import com.jetbrains.packagesearch.plugin.core.PackageSearch
+import java.nio.file.Path
+import kotlin.io.path.createParentDirectories
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.exists
+import kotlin.io.path.inputStream
+import kotlin.io.path.moveTo
+import kotlin.io.path.outputStream
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.hours
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.retry
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.decodeFromStream
+import kotlinx.serialization.json.encodeToStream
+import org.jetbrains.packagesearch.api.v3.ApiPackage
+
+/**
+ * On-disk cache of [ApiPackage]s keyed by [ApiPackage.idHash].
+ *
+ * Entries older than [ttl] are considered stale and are not returned. The file
+ * format is versioned with [PackageSearch.databaseVersion]: a cache written by a
+ * different version is discarded instead of being migrated.
+ *
+ * Entries are loaded lazily on first access and can be released with [unload]; they are
+ * loaded again from disk the next time they are needed. In memory, entries are held in a
+ * [PackageSearchMemoryCache] weighted by the number of versions of each package, so that
+ * at most [maximumWeight] versions are kept.
+ */
+class PackageSearchApiPackageCache(
+    private val cacheFile: Path,
+    private val coroutineScope: CoroutineScope,
+    private val ttl: Duration = 12.hours,
+    private val maximumWeight: Long = 250_000,
+    private val clock: () -> Long = System::currentTimeMillis,
+) {
+
+    private val json = Json {
+        ignoreUnknownKeys = true
+        encodeDefaults = true
+    }
+
+    private val mutex = Mutex()
+    private val fileMutex = Mutex()
+    private var entries: PackageSearchMemoryCache<String, CachedApiPackage>? = null
+    private var modificationCount = 0L
+    private var isFirstLoad = true
+
+    private val saveRequests = MutableSharedFlow<Unit>(
+        extraBufferCapacity = 1,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    init {
+        saveRequests
+            .debounce(5.seconds)
+            .onEach { save() }
+            .retry(5) {
+                PackageSearchLogger.logWarn("${this::class.simpleName}#saveRequests", throwable = it)
+                true
+            }
+            .launchIn(coroutineScope)
+    }
+
+    /**
+     * Returns the cached packages for the given [packageIdHashes] that are not older than [ttl],
+     * keyed by [ApiPackage.id].
+     */
+    suspend fun getByIdHashes(packageIdHashes: Set<String>): Map<String, ApiPackage> {
+        if (packageIdHashes.isEmpty()) return emptyMap()
+        val now = clock()
+        return withEntries { entries ->
+            entries.getAll(packageIdHashes).values
+                .filter { !it.isExpired(now) }
+                .associate { it.data.id to it.data }
+        }
+    }
+
+    suspend fun getByIds(packageIds: Set<String>): Map<String, ApiPackage> =
+        getByIdHashes(packageIds.mapTo(mutableSetOf()) { ApiPackage.hashPackageId(it) })
+
+    /**
+     * Stores [packages] and returns their canonical instances: when a package equal to an already
+     * cached one is stored, the cached instance is kept and returned, so identical packages are
+     * held in memory only once.
+     */
+    suspend fun put(packages: Collection<ApiPackage>): List<ApiPackage> {
+        if (packages.isEmpty()) return emptyList()
+        val now = clock()
+        val canonicalPackages = withEntries { entries ->
+            packages.map { apiPackage ->
+                val canonical = entries.asMap()[apiPackage.idHash]?.data?.takeIf { it == apiPackage } ?: apiPackage
+                entries[apiPackage.idHash] = CachedApiPackage(apiPackage.idHash, now, canonical)
+                canonical
+            }.also { modificationCount++ }
+        }
+        saveRequests.tryEmit(Unit)
+        return canonicalPackages
+    }
+
+    /**
+     * Marks the cached entries for [packageIdHashes] as fresh again, without changing their data.
+     */
+    suspend fun renew(packageIdHashes: Set<String>) {
+        if (packageIdHashes.isEmpty()) return
+        val now = clock()
+        withEntries { entries ->
+            packageIdHashes.forEach { packageIdHash ->
+                entries.asMap().computeIfPresent(packageIdHash) { _, entry -> entry.copy(lastUpdateEpochMillis = now) }
+            }
+            modificationCount++
+        }
+        saveRequests.tryEmit(Unit)
+    }
+
+    suspend fun clear() {
+        withEntries {
+            it.clear()
+            modificationCount++
+        }
+        saveRequests.tryEmit(Unit)
+    }
+
+    /**
+     * Writes the pending changes to disk and releases the in-memory entries, unless they
+     * were modified while being written.
+     */
+    suspend fun unload() {
+        val savedModificationCount = save() ?: return
+        mutex.withLock { if (modificationCount == savedModificationCount) entries = null }
+    }
+
+    private fun CachedApiPackage.isExpired(now: Long) =
+        (now - lastUpdateEpochMillis).milliseconds > ttl
+
+    private suspend fun <T> withEntries(action: (PackageSearchMemoryCache<String, CachedApiPackage>) -> T): T =
+        mutex.withLock { action(entries ?: newMemoryCache().apply { putAll(load()) }.also { entries = it }) }
+
+    private fun newMemoryCache() = PackageSearchMemoryCache<String, CachedApiPackage>(
+        name = cacheFile.fileName.toString(),
+        maximumWeight = maximumWeight,
+        weigher = { _, entry -> 1 + entry.data.versions.all.size },
+    )
+
+    private suspend fun load(): Map<String, CachedApiPackage> = withContext(Dispatchers.IO) {
+        if (isFirstLoad && PackageSearch.deleteCachesOnStartup) cacheFile.deleteIfExists()
+        isFirstLoad = false
+        if (!cacheFile.exists()) return@withContext emptyMap()
+        kotlin.runCatching { cacheFile.inputStream().use { json.decodeFromStream<CachedApiPackagesFile>(it) } }
+            .onFailure { PackageSearchLogger.logDebug("${PackageSearchApiPackageCache::class.simpleName}#load", it) { "Failed to load cache" } }
+            .getOrNull()
+            ?.takeIf { it.databaseVersion == PackageSearch.databaseVersion }
+            ?.entries
+            ?.associateBy { it.packageIdHash }
+            ?: emptyMap<String, CachedApiPackage>().also { cacheFile.deleteIfExists() }
+    }
+
+    /**
+     * @return the modification count of the saved entries, or `null` if they are not loaded.
+     */
+    private suspend fun save(): Long? {
+        val now = clock()
+        val (snapshot, snapshotModificationCount) = mutex.withLock {
+            val current = entries?.asMap() ?: return null
+            current.values.removeIf { it.isExpired(now) }
+            CachedApiPackagesFile(PackageSearch.databaseVersion, current.values.toList()) to modificationCount
+        }
+        fileMutex.withLock {
+            withContext(Dispatchers.IO) {
+                val tmpFile = cacheFile.resolveSibling("${cacheFile.fileName}.tmp")
+                tmpFile.createParentDirectories()
+                tmpFile.outputStream().use { json.encodeToStream(snapshot, it) }
+                tmpFile.moveTo(cacheFile, overwrite = true)
+            }
+        }
+        PackageSearchLogger.logDebug("${this::class.qualifiedName}#save") { "entries.size = ${snapshot.entries.size}" }
+        return snapshotModificationCount
+    }
+}
+
+@Serializable
+internal data class CachedApiPackagesFile(
+    val databaseVersion: Int,
+    val entries: List<CachedApiPackage>,
+)
+
+@Serializable
+internal data class CachedApiPackage(
+    val packageIdHash: String,
+    val lastUpdateEpochMillis: Long,
+    val data: ApiPackage,
+)
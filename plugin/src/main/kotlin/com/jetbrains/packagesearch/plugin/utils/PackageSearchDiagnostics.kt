@@ -0,0 +1,80 @@
+package com.jetbrains.packagesearch.plugin.utils
+
+import com.intellij.openapi.components.service
+import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchReadActionMonitor
+import kotlin.time.DurationUnit
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * Everything Package Search knows about its own performance: the [PackageSearchMetrics] of the
+ * pipeline, the stats of its in-memory caches and of its read actions.
+ *
+ * Shown in the internal diagnostics view and dumped as JSON by the performance tests.
+ */
+@Serializable
+data class PackageSearchDiagnostics(
+    val metrics: PackageSearchMetrics.Snapshot,
+    val caches: List<Cache>,
+    val readActions: ReadActions,
+) {
+
+    @Serializable
+    data class Cache(
+        val name: String,
+        val size: Long,
+        val hitCount: Long,
+        val missCount: Long,
+        val hitRate: Double,
+        val evictionCount: Long,
+    )
+
+    @Serializable
+    data class ReadActions(
+        val count: Long,
+        val overBudgetCount: Long,
+        val totalMillis: Double,
+        val maxMillis: Double,
+        val blockedWriteActions: Long,
+        val totalWriteActionBlockingMillis: Double,
+        val maxWriteActionBlockingMillis: Double,
+    )
+
+    companion object {
+
+        private val json = Json { prettyPrint = true }
+
+        fun collect(): PackageSearchDiagnostics {
+            val readActionStats = IntelliJApplication.service<PackageSearchReadActionMonitor>().stats()
+            return PackageSearchDiagnostics(
+                metrics = PackageSearchMetrics.snapshot(),
+                caches = PackageSearchMemoryCache.allStats().map {
+                    Cache(
+                        name = it.name,
+                        size = it.size,
+                        hitCount = it.hitCount,
+                        missCount = it.missCount,
+                        hitRate = it.hitRate,
+                        evictionCount = it.evictionCount,
+                    )
+                },
+                readActions = ReadActions(
+                    count = readActionStats.readActions,
+                    overBudgetCount = readActionStats.readActionsOverBudget,
+                    totalMillis = readActionStats.totalReadActionTime.toDouble(DurationUnit.MILLISECONDS),
+                    maxMillis = readActionStats.maxReadActionTime.toDouble(DurationUnit.MILLISECONDS),
+                    blockedWriteActions = readActionStats.blockedWriteActions,
+                    totalWriteActionBlockingMillis = readActionStats.totalWriteActionBlockingTime
+                        .toDouble(DurationUnit.MILLISECONDS),
+                    maxWriteActionBlockingMillis = readActionStats.maxWriteActionBlockingTime
+                        .toDouble(DurationUnit.MILLISECONDS),
+                ),
+            )
+        }
+    }
+
+    fun toJson(): String = json.encodeToString(this)
+}
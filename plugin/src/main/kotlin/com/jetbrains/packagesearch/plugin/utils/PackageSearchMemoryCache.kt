@@ -0,0 +1,94 @@
+package com.jetbrains.packagesearch.plugin.utils
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import java.util.Collections
+import java.util.WeakHashMap
+import java.util.concurrent.ConcurrentMap
+import kotlin.time.Duration
+import kotlin.time.toJavaDuration
+
+/**
+ * Size-bounded in-memory cache shared by the Package Search caches.
+ *
+ * Entries are evicted once the sum of their [weigher] values exceeds [maximumWeight], or
+ * [expireAfterWrite] after being stored if set, and all of them can be dropped at once
+ * with [clear], for instance when the IDE is low on memory.
+ * Hits, misses and evictions are recorded and exposed through [stats]; the stats of every
+ * live cache are available with [allStats].
+ */
+class PackageSearchMemoryCache<K : Any, V : Any>(
+    val name: String,
+    maximumWeight: Long,
+    weigher: (K, V) -> Int = { _, _ -> 1 },
+    expireAfterWrite: Duration? = null,
+) {
+
+    companion object {
+
+        private val caches: MutableSet<PackageSearchMemoryCache<*, *>> =
+            Collections.synchronizedSet(Collections.newSetFromMap(WeakHashMap()))
+
+        fun allStats(): List<Stats> = synchronized(caches) { caches.map { it.stats } }
+    }
+
+    data class Stats(
+        val name: String,
+        val size: Long,
+        val hitCount: Long,
+        val missCount: Long,
+        val evictionCount: Long,
+        val evictionWeight: Long,
+    ) {
+        val hitRate: Double
+            get() = if (hitCount + missCount == 0L) 1.0 else hitCount.toDouble() / (hitCount + missCount)
+    }
+
+    private val cache: Cache<K, V> = Caffeine.newBuilder()
+        .maximumWeight(maximumWeight)
+        .weigher<K, V> { key, value -> weigher(key, value) }
+        .apply { if (expireAfterWrite != null) this.expireAfterWrite(expireAfterWrite.toJavaDuration()) }
+        .recordStats()
+        .build()
+
+    init {
+        caches.add(this)
+    }
+
+    val stats: Stats
+        get() = cache.stats().let {
+            Stats(
+                name = name,
+                size = cache.estimatedSize(),
+                hitCount = it.hitCount(),
+                missCount = it.missCount(),
+                evictionCount = it.evictionCount(),
+                evictionWeight = it.evictionWeight(),
+            )
+        }
+
+    operator fun get(key: K): V? = cache.getIfPresent(key)
+
+    fun getAll(keys: Iterable<K>): Map<K, V> = cache.getAllPresent(keys)
+
+    operator fun set(key: K, value: V) {
+        cache.put(key, value)
+    }
+
+    fun putAll(values: Map<K, V>) {
+        cache.putAll(values)
+    }
+
+    fun remove(key: K) {
+        cache.invalidate(key)
+    }
+
+    fun clear() {
+        cache.invalidateAll()
+    }
+
+    /**
+     * A live view of the cache. Reads through this view are not recorded in [stats].
+     */
+    fun asMap(): ConcurrentMap<K, V> = cache.asMap()
+}
@@ -0,0 +1,148 @@
+package com.jetbrains.packagesearch.plugin.utils
+
+import com.jetbrains.packagesearch.plugin.core.utils.PackageSearchMetrics
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.seconds
+import kotlin.time.TimeMark
+import kotlin.time.TimeSource
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Collects concurrent requests for values identified by keys of type [K], retrieves them
+ * in batches with [retrieve] and hands each caller only the values it asked for.
+ *
+ * Concurrent requests for the same key share a single fetch: a key that is already pending
+ * is not queued again, the caller just waits on the same [CompletableDeferred]. Keys are
+ * forgotten as soon as their fetch completes, successfully or not, so nothing is retained
+ * here: callers that need the values again should cache them.
+ * Every batch result is indexed once with [keyOf], so delivery cost depends only on the
+ * size of the caller's request and not on how many other callers share the batch.
+ *
+ * A batch is sent when no new key arrived for a quiet period, when it holds
+ * `maxBatchSize * maxConcurrentRequests` keys, or at the latest [maxWait] after its first
+ * key, so the time to first data stays bounded while requests keep trickling in.
+ * The quiet period follows the observed arrival rate and the deadline follows the
+ * observed server latency, both clamped between [minWait] and [maxWait]. Batches are
+ * split into chunks of at most [maxBatchSize] keys, retrieved in parallel, and callers
+ * are completed as soon as all the chunks holding their keys are done.
+ *
+ * The time batches wait before being sent and their sizes are recorded in [PackageSearchMetrics]
+ * under [metricsName].
+ */
+class RequestBatcher<K, V : Any>(
+    private val coroutineScope: CoroutineScope,
+    private val keyOf: (V) -> K,
+    private val metricsName: String = "requests",
+    private val minWait: Duration = 50.milliseconds,
+    private val maxWait: Duration = 1.seconds,
+    private val maxBatchSize: Int = 200,
+    private val maxConcurrentRequests: Int = 4,
+    private val timeSource: TimeSource = TimeSource.Monotonic,
+    private val retrieve: suspend (Set<K>) -> Collection<V>,
+) {
+
+    private val keysChannel = Channel<List<K>>(Channel.UNLIMITED)
+    private val requestsSemaphore = Semaphore(maxConcurrentRequests)
+
+    /**
+     * Keys in flight only; each is removed when its fetch completes.
+     */
+    private val responses = ConcurrentHashMap<K, CompletableDeferred<V?>>()
+
+    private val interArrivalTime = MovingAverage(minWait)
+    private val serverLatency = MovingAverage(maxWait / 2)
+
+    init {
+        require(maxBatchSize > 0) { "maxBatchSize must be positive" }
+        require(minWait <= maxWait) { "minWait must not exceed maxWait" }
+        coroutineScope.launch { batchRequests() }
+    }
+
+    /**
+     * Returns the values found for [keys], keyed by [keyOf]. Keys for which nothing
+     * was retrieved are missing from the result.
+     */
+    suspend fun await(keys: Set<K>): Map<K, V> {
+        if (keys.isEmpty()) return emptyMap()
+        val newKeys = mutableListOf<K>()
+        val keyResponses = keys.map { key ->
+            key to responses.computeIfAbsent(key) {
+                newKeys.add(key)
+                CompletableDeferred()
+            }
+        }
+        if (newKeys.isNotEmpty()) keysChannel.send(newKeys)
+        return buildMap(keys.size) {
+            keyResponses.forEach { (key, response) -> response.await()?.let { put(key, it) } }
+        }
+    }
+
+    private suspend fun batchRequests() {
+        var lastArrival = timeSource.markNow()
+        while (true) {
+            val batchKeys = keysChannel.receive().toMutableSet()
+            lastArrival = recordArrival(lastArrival)
+            val batchStart = lastArrival
+            val deadline = serverLatency.value.coerceIn(minWait, maxWait)
+            while (batchKeys.size < maxBatchSize * maxConcurrentRequests) {
+                val remaining = deadline - batchStart.elapsedNow()
+                if (remaining <= Duration.ZERO) break
+                val quietPeriod = (interArrivalTime.value * 2).coerceIn(minWait, maxWait)
+                val next = withTimeoutOrNull(minOf(remaining, quietPeriod)) { keysChannel.receive() }
+                    ?: break
+                lastArrival = recordArrival(lastArrival)
+                batchKeys.addAll(next)
+            }
+            PackageSearchMetrics.record("$metricsName.batch.wait", batchStart.elapsedNow())
+            PackageSearchMetrics.increment("$metricsName.batches")
+            PackageSearchMetrics.increment("$metricsName.batch.keys", batchKeys.size.toLong())
+            dispatch(batchKeys)
+        }
+    }
+
+    private fun recordArrival(previous: TimeMark): TimeMark {
+        interArrivalTime.add(previous.elapsedNow().coerceAtMost(maxWait))
+        return timeSource.markNow()
+    }
+
+    private fun dispatch(keys: Set<K>) {
+        keys.chunked(maxBatchSize).forEach { chunk ->
+            coroutineScope.launch {
+                runCatching { requestsSemaphore.withPermit { retrieveMeasured(chunk.toSet()) } }
+                    .onSuccess { values -> chunk.forEach { responses.remove(it)?.complete(values[it]) } }
+                    .onFailure { error ->
+                        chunk.forEach { key ->
+                            responses.remove(key)?.completeExceptionally(error)
+                        }
+                    }
+            }
+        }
+    }
+
+    private suspend fun retrieveMeasured(keys: Set<K>): Map<K, V> {
+        val start = timeSource.markNow()
+        val values = retrieve(keys)
+        serverLatency.add(start.elapsedNow())
+        return values.associateBy(keyOf)
+    }
+
+    private class MovingAverage(initialValue: Duration, private val weight: Double = 0.2) {
+
+        @Volatile
+        var value: Duration = initialValue
+            private set
+
+        @Synchronized
+        fun add(sample: Duration) {
+            value = value * (1 - weight) + sample * weight
+        }
+    }
+}
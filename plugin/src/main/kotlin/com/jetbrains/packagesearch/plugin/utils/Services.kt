@@ -5,6 +5,7 @@ import com.intellij.openapi.components.service
 import com.intellij.openapi.project.Project
 import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
 import com.jetbrains.packagesearch.plugin.fus.PackageSearchFUSEvent
+import com.jetbrains.packagesearch.plugin.services.PackageSearchApiPackagesService
 import com.jetbrains.packagesearch.plugin.services.PackageSearchFUSService
 import com.jetbrains.packagesearch.plugin.services.PackageSearchProjectService
 import com.jetbrains.packagesearch.plugin.services.PackageSearchSettingsService
@@ -14,6 +15,9 @@ import org.jetbrains.idea.packagesearch.api.PackageSearchApiClientService
 val Application.PackageSearchApiClientService
     get() = service< PackageSearchApiClientService>()
 
+val Application.PackageSearchApiPackagesService
+    get() = service<PackageSearchApiPackagesService>()
+
 val Project.PackageSearchProjectService
     get() = service<PackageSearchProjectService>()
 
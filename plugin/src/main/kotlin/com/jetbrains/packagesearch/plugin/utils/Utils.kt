@@ -86,11 +86,44 @@ fun <T1 : Any, T2 : Any, T3 : Any, T4 : Any, T5 : Any, T6 : Any, T7 : Any, T8 :
     )
 }
 
+/**
+ * Returns a [Flow] whose values are generated by [transform] function that process the most recently emitted values by each flow.
+ */
+@Suppress("UNCHECKED_CAST")
+fun <T1 : Any, T2 : Any, T3 : Any, T4 : Any, T5 : Any, T6 : Any, T7 : Any, T8 : Any, T9 : Any, R> combine(
+    flow: Flow<T1>,
+    flow2: Flow<T2>,
+    flow3: Flow<T3>,
+    flow4: Flow<T4>,
+    flow5: Flow<T5>,
+    flow6: Flow<T6>,
+    flow7: Flow<T7>,
+    flow8: Flow<T8>,
+    flow9: Flow<T9>,
+    transform: suspend (T1, T2, T3, T4, T5, T6, T7, T8, T9) -> R,
+): Flow<R> = combine(flow, flow2, flow3, flow4, flow5, flow6, flow7, flow8, flow9) { args: Array<Any> ->
+    transform(
+        args[0] as T1,
+        args[1] as T2,
+        args[2] as T3,
+        args[3] as T4,
+        args[4] as T5,
+        args[5] as T6,
+        args[6] as T7,
+        args[7] as T8,
+        args[8] as T9,
+    )
+}
+
 @Suppress("UNCHECKED_CAST")
 internal fun <K, V> Map<K?, V>.filterNotNullKeys() =
     filterKeys { it != null } as Map<K, V>
 
-internal fun <T> timer(interval: Duration, generate: suspend () -> T) = flow {
+/**
+ * Emits the result of [generate] every [interval], the first time after [initialDelay].
+ */
+internal fun <T> timer(interval: Duration, initialDelay: Duration = Duration.ZERO, generate: suspend () -> T) = flow {
+    delay(initialDelay)
     while (true) {
         emit(generate())
         delay(interval)
@@ -2,119 +2,46 @@ package com.jetbrains.packagesearch.plugin.utils
 
 import com.intellij.openapi.project.Project
 import com.jetbrains.packagesearch.plugin.core.extensions.PackageSearchModuleBuilderContext
-import java.util.UUID
-import kotlin.time.Duration
-import kotlin.time.Duration.Companion.seconds
+import com.jetbrains.packagesearch.plugin.services.PackageSearchApiPackagesService
+import java.nio.file.Path
 import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.CoroutineStart
-import kotlinx.coroutines.Job
-import kotlinx.coroutines.async
-import kotlinx.coroutines.channels.Channel
-import kotlinx.coroutines.coroutineScope
-import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.SharingStarted
-import kotlinx.coroutines.flow.channelFlow
-import kotlinx.coroutines.flow.filter
-import kotlinx.coroutines.flow.first
-import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.onCompletion
-import kotlinx.coroutines.flow.onEach
-import kotlinx.coroutines.flow.receiveAsFlow
-import kotlinx.coroutines.flow.shareIn
-import kotlinx.coroutines.launch
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
 import org.jetbrains.packagesearch.api.v3.ApiPackage
 import org.jetbrains.packagesearch.api.v3.ApiRepository
-import org.jetbrains.packagesearch.api.v3.http.PackageSearchApiClient
 
 class WindowedModuleBuilderContext(
     override val project: Project,
     private val knownRepositoriesGetter: () -> Map<String, ApiRepository>,
-    private val packageSearchApiClient: PackageSearchApiClient,
+    private val apiPackagesService: PackageSearchApiPackagesService,
+    private val resolutionScheduler: ModuleResolutionScheduler,
     override val coroutineScope: CoroutineScope,
 ) : PackageSearchModuleBuilderContext {
 
     override val knownRepositories: Map<String, ApiRepository>
         get() = knownRepositoriesGetter()
 
-    private val idRequestsChannel = Channel<Request>()
-    private val hashRequestsChannel = Channel<Request>()
-    private val idResultsFlow = idRequestsChannel
-        .responseFlow("idResultsFlow") { packageSearchApiClient.getPackageInfoByIds(it) }
+    override suspend fun getPackageInfoByIds(packageIds: Set<String>): Map<String, ApiPackage> =
+        apiPackagesService.getPackageInfoByIds(packageIds)
 
-    private val hashResultsFlow = hashRequestsChannel
-        .responseFlow("hashResultsFlow") { packageSearchApiClient.getPackageInfoByIdHashes(it) }
+    override suspend fun getPackageInfoByIdHashes(packageIdHashes: Set<String>): Map<String, ApiPackage> =
+        apiPackagesService.getPackageInfoByIdHashes(packageIdHashes)
 
-    override suspend fun getPackageInfoByIds(packageIds: Set<String>) =
-        idResultsFlow.awaitResponse(packageIds, idRequestsChannel)
+    override suspend fun getDeclaredPackageInfoByIdHashes(
+        declaredVersionsByIdHash: Map<String, Set<String>>,
+    ): Map<String, ApiPackage> =
+        apiPackagesService.getPackageInfoByIdHashes(declaredVersionsByIdHash.keys, declaredVersionsByIdHash)
 
-    override suspend fun getPackageInfoByIdHashes(packageIdHashes: Set<String>) =
-        hashResultsFlow.awaitResponse(packageIdHashes, hashRequestsChannel)
+    override suspend fun <T> withResolutionPriority(projectDir: Path, resolve: suspend () -> T): T =
+        resolutionScheduler.schedule(projectDir, resolve)
 
-    private fun Channel<Request>.responseFlow(
-        flowName: String,
-        retrieveFunction: suspend (Set<String>) -> Map<String, ApiPackage>,
-    ) = receiveAsFlow()
-        .debounceBatch(1.seconds)
-        .map { requests ->
-            Response(
-                requestIds = requests.map { it.requestId }.toSet(),
-                packages = retrieveFunction(requests.flatMap { it.request }.toSet())
-            )
-        }
-        .onEach { PackageSearchLogger.logDebug("${this::class.qualifiedName}#${flowName}") { "response.size = ${it.requestIds.size}" } }
-        .shareIn(coroutineScope, SharingStarted.Eagerly, 0)
-
-    private suspend fun Flow<Response>.awaitResponse(
-        packageIds: Set<String>,
-        requestChannel: Channel<Request>,
-    ): Map<String, ApiPackage> = coroutineScope {
-        val requestId = UUID.randomUUID().toString()
-        val requestedPackages = async(start = CoroutineStart.UNDISPATCHED) {
-            filter { requestId in it.requestIds }
-                .map { it.packages }
-                .first()
-        }
-        requestChannel.send(Request(requestId, packageIds))
-        requestedPackages.await()
-    }
+    /**
+     * @see PackageSearchApiPackagesService.getCachedPackageInfoByIds
+     */
+    suspend fun getCachedPackageInfoByIds(packageIds: Set<String>): Map<String, ApiPackage> =
+        apiPackagesService.getCachedPackageInfoByIds(packageIds)
 
+    /**
+     * @see PackageSearchApiPackagesService.refreshPackages
+     */
+    suspend fun refreshPackages(knownPackages: Map<String, ApiPackage?>): Set<String> =
+        apiPackagesService.refreshPackages(knownPackages)
 }
-
-private data class Request(
-    val requestId: String,
-    val request: Set<String>,
-)
-
-private data class Response(
-    val requestIds: Set<String>,
-    val packages: Map<String, ApiPackage>,
-)
-
-private fun <T> Flow<T>.debounceBatch(duration: Duration): Flow<List<T>> = channelFlow {
-    val mutex = Mutex()
-    val buffer = mutableListOf<T>()
-    var job: Job? = null
-    onCompletion {
-        mutex.withLock {
-            job?.cancel()
-            send(buffer.toList())
-        }
-    }
-        .collect {
-            mutex.withLock {
-                buffer.add(it)
-                job?.cancel()
-                job = launch {
-                    delay(duration)
-                    mutex.withLock {
-                        val bufferCopy = buffer.toList()
-                        send(bufferCopy)
-                        buffer.clear()
-                    }
-                }
-            }
-        }
-}
\ No newline at end of file
@@ -4,15 +4,21 @@ package com.jetbrains.packagesearch.plugin.utils
 
 import com.intellij.icons.AllIcons
 import com.intellij.openapi.actionSystem.ActionUpdateThread
+import com.intellij.openapi.actionSystem.AnAction
 import com.intellij.openapi.actionSystem.AnActionEvent
 import com.intellij.openapi.actionSystem.DefaultActionGroup
 import com.intellij.openapi.actionSystem.ToggleAction
 import com.intellij.openapi.project.DumbAware
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.ui.DialogBuilder
 import com.intellij.openapi.wm.ToolWindow
 import com.intellij.openapi.wm.ex.ToolWindowEx
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.components.JBTextArea
 import com.intellij.util.asSafely
+import com.intellij.util.ui.JBUI
 import com.jetbrains.packagesearch.plugin.PackageSearchBundle
+import com.jetbrains.packagesearch.plugin.core.utils.IntelliJApplication
 import com.jetbrains.packagesearch.plugin.fus.PackageSearchFUSEvent
 import javax.swing.Icon
 
@@ -47,7 +53,9 @@ internal fun ToolWindow.installActions(project: Project) {
                 toggleInfoboxAction,
                 toggleOnlyStableAction,
                 toggleInstallRepository
-            )
+            ).apply {
+                if (IntelliJApplication.isInternal) add(ShowDiagnosticsAction(project))
+            }
         )
 
     asSafely<ToolWindowEx>()?.setTitleActions(listOf(toggleInfoboxAction))
@@ -64,3 +72,23 @@ private fun ToggleAction(
     override fun setSelected(e: AnActionEvent, state: Boolean) = setSelected(state)
     override fun getActionUpdateThread() = ActionUpdateThread.BGT
 }
+
+/**
+ * Internal view of the [PackageSearchDiagnostics], available only in internal mode.
+ */
+private class ShowDiagnosticsAction(private val project: Project) : AnAction(
+    PackageSearchBundle.message("packagesearch.actions.showDiagnostics.text"),
+    PackageSearchBundle.message("packagesearch.actions.showDiagnostics.description"),
+    AllIcons.Actions.Profile,
+), DumbAware {
+
+    override fun actionPerformed(e: AnActionEvent) {
+        val textArea = JBTextArea(PackageSearchDiagnostics.collect().toJson()).apply { isEditable = false }
+        DialogBuilder(project)
+            .title(PackageSearchBundle.message("packagesearch.actions.showDiagnostics.text"))
+            .centerPanel(JBScrollPane(textArea).apply { preferredSize = JBUI.size(640, 480) })
+            .show()
+    }
+
+    override fun getActionUpdateThread() = ActionUpdateThread.BGT
+}
@@ -10,6 +10,7 @@ import com.intellij.ide.starter.runner.Starter
 import com.intellij.openapi.util.io.toNioPathOrNull
 import com.intellij.tools.ide.performanceTesting.commands.CommandChain
 import com.intellij.tools.ide.performanceTesting.commands.SdkObject
+import com.jetbrains.packagesearch.plugin.tests.dumps.DumpPackageSearchMetrics
 import com.jetbrains.packagesearch.plugin.tests.dumps.DumpPackageSearchModules
 import com.jetbrains.packagesearch.plugin.utils.PackageSearchLogger
 import java.nio.file.Path
@@ -73,6 +74,7 @@ internal fun Path.extractInto(outputDir: Path) {
 
 internal fun <T : CommandChain> T.dumpPKGSTestData(): T {
     addCommand(DumpPackageSearchModules.PREFIX)
+    addCommand(DumpPackageSearchMetrics.PREFIX)
     return this
 }
 
@@ -165,6 +167,8 @@ internal fun buildIdeContext(projectPath: Path): IDETestContext {
         .setSharedIndexesDownload(true)
         .addProjectToTrustedLocations()
         .disableFusSendingOnIdeClose()
+        // modules are built from the scanned build files, checked against the Gradle DSL model
+        .applyVMOptionsPatch { addSystemProperty("packagesearch.plugin.gradle.fast.scanner.verify", true) }
         .setupSdk(sdk) //  <component name="ProjectRootManager" version="2" languageLevel="JDK_1_8" project-jdk-name="..." project-jdk-type="JavaSDK" />
         .also {
             it.pluginConfigurator
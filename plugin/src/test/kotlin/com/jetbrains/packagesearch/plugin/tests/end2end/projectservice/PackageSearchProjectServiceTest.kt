@@ -1,5 +1,6 @@
 package com.jetbrains.packagesearch.plugin.tests.end2end.projectservice
 
+import com.intellij.ide.starter.ide.IDETestContext
 import com.intellij.tools.ide.performanceTesting.commands.CommandChain
 import com.intellij.tools.ide.performanceTesting.commands.exitApp
 import com.intellij.tools.ide.performanceTesting.commands.waitForSmartMode
@@ -57,6 +58,13 @@ abstract class PackageSearchProjectServiceTest {
 
     open fun editProject(projectDir: Path) {}
 
+    open fun configureIde(context: IDETestContext) {}
+
+    /**
+     * Checks the run of the IDE beyond the modules it dumped, once they are validated.
+     */
+    open fun validateRun(projectName: String) {}
+
     @ParameterizedTest
     @MethodSource("getProjects")
     fun `verify PKGS Modules`(projectName: String) = runTest(timeout = 45.minutes) {
@@ -70,6 +78,7 @@ abstract class PackageSearchProjectServiceTest {
 
         //IDE context setup
         val testContext = buildIdeContext(projectDir)
+        configureIde(testContext)
 
         val dumpPkgsDataChain = CommandChain()
             .waitForSmartMode()
@@ -83,5 +92,6 @@ abstract class PackageSearchProjectServiceTest {
 
         //result validation
         validateResult(projectName, "$resourcePath/$projectName.json")
+        validateRun(projectName)
     }
 }
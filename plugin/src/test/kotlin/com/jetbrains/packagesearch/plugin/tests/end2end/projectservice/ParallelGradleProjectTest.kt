@@ -0,0 +1,100 @@
+package com.jetbrains.packagesearch.plugin.tests.end2end.projectservice
+
+import com.intellij.ide.starter.ide.IDETestContext
+import com.jetbrains.packagesearch.plugin.tests.PKGS_TEST_DATA_OUTPUT_DIR
+import com.jetbrains.packagesearch.plugin.tests.patchGradleVersion
+import java.nio.file.Path
+import kotlin.io.path.appendLines
+import kotlin.io.path.createDirectories
+import kotlin.io.path.createFile
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.exists
+import kotlin.io.path.invariantSeparatorsPathString
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.readLines
+import kotlin.io.path.writeText
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.TestInstance
+
+/**
+ * Same projects as [GradleProjectTest], synced with parallel project configuration and with the
+ * IDE fetching the models of the projects in parallel, and with isolated projects where Gradle
+ * supports them: the sync fails if the Package Search model builder reads a project other than
+ * the one it builds the model of.
+ *
+ * The model builder traces each model it builds, see `PackageSearchGradleModelBuilder`, so that
+ * the test checks the models of different projects were built concurrently.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ParallelGradleProjectTest : PackageSearchProjectServiceTest() {
+
+    override val resourcePath = "/projects/gradle"
+
+    private val modelTraceFile: Path
+        get() = PKGS_TEST_DATA_OUTPUT_DIR.resolve("gradle-model-trace.txt")
+
+    override fun editProject(projectDir: Path) {
+        val gradleVersion = System.getenv("GRADLE_VERSION")
+            ?: error("GRADLE_VERSION is not set")
+        patchGradleVersion(gradleVersion = gradleVersion, projectDir = projectDir)
+        modelTraceFile.deleteIfExists()
+        val gradleProperties = projectDir.resolve("gradle.properties")
+        if (!gradleProperties.exists()) gradleProperties.createFile()
+        gradleProperties.appendLines(
+            buildList {
+                add("org.gradle.parallel=true")
+                if (gradleVersion.supportsIsolatedProjects()) add("org.gradle.unsafe.isolated-projects=true")
+                add("systemProp.packagesearch.gradle.model.trace=${modelTraceFile.invariantSeparatorsPathString}")
+            }
+        )
+    }
+
+    /**
+     * Turns on "Enable parallel Gradle model fetching" in the Gradle settings of the IDE.
+     */
+    override fun configureIde(context: IDETestContext) {
+        val gradleSettings = context.paths.configDir.resolve("options/gradle.settings.xml")
+        gradleSettings.parent.createDirectories()
+        gradleSettings.writeText(
+            """
+            <application>
+              <component name="GradleSystemSettings">
+                <option name="parallelModelFetch" value="true" />
+              </component>
+            </application>
+            """.trimIndent()
+        )
+    }
+
+    override fun validateRun(projectName: String) {
+        assertTrue(modelTraceFile.isRegularFile(), "The Package Search Gradle model of $projectName was not built")
+        val builds = modelTraceFile.readLines()
+            .filter { it.isNotBlank() }
+            .map { line ->
+                val fields = line.split(" ")
+                ModelBuild(
+                    project = fields.dropLast(3).joinToString(" "),
+                    thread = fields[fields.size - 3],
+                    start = fields[fields.size - 2].toLong(),
+                    end = fields.last().toLong(),
+                )
+            }
+        val overlapping = builds.any { build ->
+            builds.any { other -> other !== build && other.start < build.end && build.start < other.end }
+        }
+        assertTrue(
+            actual = overlapping,
+            message = buildString {
+                appendLine("The Package Search Gradle models of $projectName were not built in parallel:")
+                builds.sortedBy { it.start }.forEach { appendLine(it) }
+            }
+        )
+    }
+
+    private data class ModelBuild(val project: String, val thread: String, val start: Long, val end: Long)
+
+    private fun String.supportsIsolatedProjects(): Boolean {
+        val (major, minor) = split(".").map { it.takeWhile(Char::isDigit).toIntOrNull() ?: 0 } + 0
+        return major > 8 || major == 8 && minor >= 8
+    }
+}
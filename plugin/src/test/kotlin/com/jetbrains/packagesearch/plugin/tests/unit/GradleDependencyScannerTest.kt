@@ -0,0 +1,151 @@
+package com.jetbrains.packagesearch.plugin.tests.unit
+
+import com.jetbrains.packagesearch.plugin.core.extensions.DependencyDeclarationIndexes
+import com.jetbrains.packagesearch.plugin.gradle.GradleDependencyModel
+import com.jetbrains.packagesearch.plugin.gradle.utils.GradleDependencyScanner
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import org.junit.jupiter.api.Test
+
+class GradleDependencyScannerTest {
+
+    private fun String.dependency(
+        configuration: String,
+        coordinates: String,
+        occurrence: Int = 0,
+    ): GradleDependencyModel {
+        val (groupId, artifactId, version) = coordinates.split(":") + listOf(null)
+        val coordinatesStart = generateSequence(indexOf(coordinates)) { indexOf(coordinates, it + 1) }
+            .elementAt(occurrence)
+        return GradleDependencyModel(
+            groupId = groupId!!,
+            artifactId = artifactId!!,
+            version = version,
+            configuration = configuration,
+            indexes = DependencyDeclarationIndexes(
+                declarationStartIndex = lastIndexOf(configuration, coordinatesStart),
+                versionStartIndex = coordinatesStart,
+            ),
+        )
+    }
+
+    @Test
+    fun `kotlin declarations are found with their offsets`() {
+        val buildFile = """
+            plugins {
+                id("java")
+            }
+
+            repositories {
+                mavenCentral()
+            }
+
+            dependencies {
+                // logging
+                implementation("org.apache.logging.log4j:log4j-api:2.14.1")
+                implementation(project(":core"))
+                testImplementation("org.junit.jupiter:junit-jupiter"); runtimeOnly("io.ktor:ktor-client-cio:2.3.4")
+            }
+
+            tasks.test {
+                useJUnitPlatform()
+            }
+        """.trimIndent()
+
+        assertEquals(
+            expected = listOf(
+                buildFile.dependency("implementation", "org.apache.logging.log4j:log4j-api:2.14.1"),
+                buildFile.dependency("testImplementation", "org.junit.jupiter:junit-jupiter"),
+                buildFile.dependency("runtimeOnly", "io.ktor:ktor-client-cio:2.3.4"),
+            ),
+            actual = GradleDependencyScanner.scan(buildFile),
+        )
+    }
+
+    @Test
+    fun `groovy declarations are found with their offsets`() {
+        val buildFile = """
+            buildscript {
+                dependencies {
+                    classpath 'com.android.tools.build:gradle:8.2.0'
+                }
+            }
+
+            apply plugin: 'java'
+
+            dependencies {
+                implementation 'io.ktor:ktor-client-cio:2.3.4'
+                implementation project(':core')
+                /* tests */
+                testImplementation("junit:junit:4.13.2")
+            }
+        """.trimIndent()
+
+        assertEquals(
+            expected = listOf(
+                buildFile.dependency("implementation", "io.ktor:ktor-client-cio:2.3.4"),
+                buildFile.dependency("testImplementation", "junit:junit:4.13.2"),
+            ),
+            actual = GradleDependencyScanner.scan(buildFile),
+        )
+    }
+
+    @Test
+    fun `build files without dependencies have none`() {
+        assertEquals(emptyList(), GradleDependencyScanner.scan("allprojects {\n    group = \"org.example\"\n}\n"))
+    }
+
+    @Test
+    fun `unsupported declarations fall back to the DSL model`() {
+        val unsupportedDeclarations = listOf(
+            "implementation(libs.ktor.client.cio)",
+            "implementation(platform(\"org.junit:junit-bom:5.10.0\"))",
+            "implementation(\"io.ktor:ktor-client-cio:\$ktorVersion\")",
+            "implementation(\"io.ktor:ktor-client-cio:2.3.4\") { exclude(group = \"org.slf4j\") }",
+            "implementation group: 'io.ktor', name: 'ktor-client-cio', version: '2.3.4'",
+            "implementation 'io.ktor:ktor-client-cio:2.3.4@jar'",
+            "add(\"implementation\", \"io.ktor:ktor-client-cio:2.3.4\")",
+        )
+        unsupportedDeclarations.forEach { declaration ->
+            assertNull(
+                actual = GradleDependencyScanner.scan("dependencies {\n    $declaration\n}\n"),
+                message = "Expected $declaration to be unsupported",
+            )
+        }
+    }
+
+    @Test
+    fun `dependencies declared elsewhere than the top-level block fall back to the DSL model`() {
+        val buildFiles = listOf(
+            "kotlin {\n    sourceSets {\n        commonMain {\n            dependencies {\n            }\n        }\n    }\n}\n",
+            "subprojects {\n    dependencies {\n        implementation(\"io.ktor:ktor-client-cio:2.3.4\")\n    }\n}\n",
+            "project.dependencies {\n    implementation(\"io.ktor:ktor-client-cio:2.3.4\")\n}\n",
+            "apply(from = \"dependencies.gradle.kts\")\n",
+            "apply from: 'dependencies.gradle'\n",
+        )
+        buildFiles.forEach { buildFile ->
+            assertNull(GradleDependencyScanner.scan(buildFile), "Expected to fall back for:\n$buildFile")
+        }
+    }
+
+    @Test
+    fun `applied scripts and included builds are referenced`() {
+        val script = """
+            apply(from = "gradle/dependencies.gradle.kts")
+            apply from: 'gradle/publishing.gradle'
+            apply plugin: 'java'
+            includeBuild("build-logic")
+            includeBuild '../shared'
+            apply(from = "${'$'}rootDir/gradle/versions.gradle.kts")
+
+            tasks.register<Copy>("copy") {
+                from("src")
+            }
+        """.trimIndent()
+
+        assertEquals(
+            expected = listOf("gradle/dependencies.gradle.kts", "gradle/publishing.gradle", "build-logic", "../shared"),
+            actual = GradleDependencyScanner.scanReferencedPaths(script),
+        )
+    }
+}
@@ -0,0 +1,124 @@
+package com.jetbrains.packagesearch.plugin.tests.unit
+
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModel
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleJavaModelImpl
+import com.jetbrains.packagesearch.plugin.gradle.tooling.PackageSearchGradleModelInterner
+import java.io.ByteArrayOutputStream
+import java.io.ObjectOutputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import org.junit.jupiter.api.Test
+
+/**
+ * Compares the payload of the Package Search models of a synthetic 2,000-project build, with and
+ * without interning. Each model is serialized on its own, as the model of each project is sent
+ * to the IDE separately: interning only saves the values repeated within the model of a project,
+ * about a tenth of the payload here.
+ */
+class GradleModelPayloadSizeTest {
+
+    private val projectCount = 2_000
+
+    private val configurationNames = listOf(
+        "api", "implementation", "compileOnly", "runtimeOnly", "annotationProcessor",
+        "testImplementation", "testCompileOnly", "testRuntimeOnly",
+        "compileClasspath", "runtimeClasspath", "testCompileClasspath", "testRuntimeClasspath",
+        "apiElements", "runtimeElements", "default", "archives",
+    )
+
+    private val repositories = listOf(
+        "https://repo.maven.apache.org/maven2/" to "MavenRepo",
+        "https://dl.google.com/dl/android/maven2/" to "Google",
+        "https://plugins.gradle.org/m2/" to "Gradle Central Plugin Repository",
+    )
+
+    private val libraries = List(100) { "org.example.group$it" to "library-$it" }
+
+    /**
+     * Strings are copied, as strings read from the build scripts of different projects are
+     * distinct instances, unlike the literals of this test.
+     */
+    private fun String.copy() = String(toCharArray())
+
+    private fun buildModels(interner: PackageSearchGradleModelInterner?): List<PackageSearchGradleJavaModel> =
+        List(projectCount) { projectIndex ->
+            val configurations = configurationNames.map { configurationName ->
+                val dependencies = when (configurationName) {
+                    "implementation" -> List(10) { libraries[(projectIndex + it * 7) % libraries.size] }
+                    "testImplementation" -> listOf(libraries.first())
+                    else -> emptyList()
+                }.map { (group, artifact) ->
+                    when (interner) {
+                        null -> PackageSearchGradleJavaModelImpl.DependencyImpl(group.copy(), artifact.copy(), "1.0.0".copy())
+                        else -> interner.dependency(group.copy(), artifact.copy(), "1.0.0".copy())
+                    }
+                }
+                val isBucket = configurationName in configurationNames.take(8)
+                when (interner) {
+                    null -> PackageSearchGradleJavaModelImpl.ConfigurationImpl(
+                        configurationName.copy(),
+                        dependencies,
+                        PackageSearchGradleJavaModelImpl.ConfigurationImpl.roles(!isBucket, isBucket, false),
+                    )
+                    else -> interner.configuration(configurationName.copy(), dependencies, !isBucket, isBucket, false)
+                }
+            }
+            val declaredRepositories = repositories.map { (url, name) ->
+                when (interner) {
+                    null -> PackageSearchGradleJavaModelImpl.DeclaredRepositoryImpl(url.copy(), name.copy())
+                    else -> interner.repository(url.copy(), name.copy())
+                }
+            }
+            PackageSearchGradleJavaModelImpl(
+                /* projectDir = */ "/build/projects/project-$projectIndex",
+                /* projectName = */ "project-$projectIndex",
+                /* rootProjectName = */ interner?.string("build".copy()) ?: "build".copy(),
+                /* projectIdentityPath = */ ":project-$projectIndex",
+                /* configurations = */ interner?.list(configurations) ?: configurations,
+                /* repositories = */ interner?.list(declaredRepositories) ?: declaredRepositories,
+                /* isJavaApplied = */ true,
+                /* isAmperApplied = */ false,
+                /* isKotlinMultiplatformApplied = */ false,
+                /* isKotlinAndroidApplied = */ false,
+                /* buildFilePath = */ "/build/projects/project-$projectIndex/build.gradle.kts",
+                /* rootProjectPath = */ interner?.string("/build".copy()) ?: "/build".copy(),
+                /* gradleVersion = */ interner?.string("8.10".copy()) ?: "8.10".copy(),
+            )
+        }
+
+    private fun payloadSize(model: PackageSearchGradleJavaModel): Int {
+        val bytes = ByteArrayOutputStream()
+        ObjectOutputStream(bytes).use { it.writeObject(model) }
+        return bytes.size()
+    }
+
+    @Test
+    fun `interned models of a 2,000-project build have smaller per-project payloads`() {
+        val plainSizes = buildModels(interner = null).map { payloadSize(it) }
+        val internedSizes = buildModels(PackageSearchGradleModelInterner()).map { payloadSize(it) }
+
+        plainSizes.zip(internedSizes).forEachIndexed { projectIndex, (plainSize, internedSize) ->
+            assertTrue(
+                actual = internedSize <= plainSize,
+                message = "Interned payload of project $projectIndex is $internedSize bytes, more than the plain $plainSize bytes",
+            )
+        }
+        assertTrue(
+            actual = internedSizes.sum() < plainSizes.sum(),
+            message = "Interned payload of ${internedSizes.sum()} bytes is not under the plain ${plainSizes.sum()} bytes",
+        )
+    }
+
+    @Test
+    fun `interning keeps models equal`() {
+        val interner = PackageSearchGradleModelInterner()
+        val plain = buildModels(interner = null)
+        val interned = buildModels(interner)
+
+        plain.zip(interned).forEach { (expected, actual) ->
+            assertEquals(expected.configurations, actual.configurations)
+            assertEquals(expected.declaredRepositories, actual.declaredRepositories)
+            assertEquals(expected.rootProjectPath, actual.rootProjectPath)
+        }
+    }
+}
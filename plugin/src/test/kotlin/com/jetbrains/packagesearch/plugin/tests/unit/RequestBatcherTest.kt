@@ -0,0 +1,143 @@
+package com.jetbrains.packagesearch.plugin.tests.unit
+
+import com.jetbrains.packagesearch.plugin.utils.RequestBatcher
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.seconds
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.currentTime
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.test.testTimeSource
+import org.junit.jupiter.api.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class RequestBatcherTest {
+
+    private fun TestScope.stringBatcher(
+        coroutineScope: CoroutineScope = backgroundScope,
+        maxBatchSize: Int = 200,
+        keyOf: (String) -> String = { it.removePrefix("value-") },
+        retrieve: suspend (Set<String>) -> Collection<String>,
+    ) = RequestBatcher(
+        coroutineScope = coroutineScope,
+        keyOf = keyOf,
+        maxBatchSize = maxBatchSize,
+        timeSource = testTimeSource,
+        retrieve = retrieve,
+    )
+
+    @Test
+    fun `each of thousands of concurrent callers receives only its own slice`() = runTest {
+        val callers = 5_000
+        val distinctKeys = 1_000
+        val retrievedValues = AtomicInteger()
+        val keyOfCalls = AtomicInteger()
+        val batcher = stringBatcher(
+            keyOf = {
+                keyOfCalls.incrementAndGet()
+                it.removePrefix("value-")
+            },
+        ) { keys ->
+            retrievedValues.addAndGet(keys.size)
+            keys.map { "value-$it" }
+        }
+
+        val requests = List(callers) { caller -> List(3) { "key-${(caller * 7 + it) % distinctKeys}" }.toSet() }
+        val responses = requests.map { async { batcher.await(it) } }.awaitAll()
+
+        requests.zip(responses).forEach { (request, response) ->
+            assertEquals(request, response.keys)
+            response.forEach { (key, value) -> assertEquals("value-$key", value) }
+        }
+        // every key is retrieved and indexed once, regardless of how many callers share it
+        assertEquals(distinctKeys, retrievedValues.get())
+        assertEquals(distinctKeys, keyOfCalls.get())
+    }
+
+    @Test
+    fun `keys are shared while in flight and not retained once retrieved`() = runTest {
+        val retrievedKeys = mutableListOf<String>()
+        val batcher = stringBatcher { keys ->
+            retrievedKeys.addAll(keys)
+            keys.map { "value-$it" }
+        }
+
+        List(100) { async { batcher.await(setOf("shared", "key-$it")) } }.awaitAll()
+        assertEquals(1, retrievedKeys.count { it == "shared" })
+
+        batcher.await(setOf("shared"))
+        assertEquals(2, retrievedKeys.count { it == "shared" })
+    }
+
+    @Test
+    fun `failed keys are retried by the next caller`() = runTest {
+        var fail = true
+        val batcher = stringBatcher { keys ->
+            if (fail) error("API unavailable")
+            keys.map { "value-$it" }
+        }
+
+        assertFailsWith<IllegalStateException> { batcher.await(setOf("key")) }
+        fail = false
+        assertEquals(mapOf("key" to "value-key"), batcher.await(setOf("key")))
+    }
+
+    @Test
+    fun `missing keys are absent from the caller slice`() = runTest {
+        val batcher = stringBatcher(keyOf = { it }) { keys -> keys.filter { it != "missing" } }
+
+        assertEquals(mapOf("present" to "present"), batcher.await(setOf("present", "missing")))
+    }
+
+    @Test
+    fun `retrieval failures are delivered to every waiting caller`() = runTest {
+        val batcher = stringBatcher { error("API unavailable") }
+
+        val responses = List(100) { async { runCatching { batcher.await(setOf("key-$it")) } } }.awaitAll()
+
+        responses.forEach { assertFailsWith<IllegalStateException> { it.getOrThrow() } }
+    }
+
+    @Test
+    fun `batches never exceed the maximum batch size`() = runTest {
+        val batchSizes = mutableListOf<Int>()
+        val batcher = stringBatcher(maxBatchSize = 50) { keys ->
+            batchSizes.add(keys.size)
+            keys.map { "value-$it" }
+        }
+
+        List(1_000) { async { batcher.await(setOf("key-$it")) } }.awaitAll()
+
+        assertTrue(batchSizes.all { it <= 50 })
+        assertEquals(1_000, batchSizes.sum())
+    }
+
+    @Test
+    fun `time to first data is bounded while requests keep trickling in`() = runTest {
+        val serverLatency = 200.milliseconds
+        val batcher = stringBatcher { keys ->
+            delay(serverLatency)
+            keys.map { "value-$it" }
+        }
+
+        val trickle = launch {
+            repeat(200) {
+                launch { batcher.await(setOf("key-$it")) }
+                delay(100.milliseconds)
+            }
+        }
+
+        batcher.await(setOf("first"))
+        assertTrue(currentTime.milliseconds <= 1.seconds + serverLatency)
+        trickle.cancel()
+    }
+}